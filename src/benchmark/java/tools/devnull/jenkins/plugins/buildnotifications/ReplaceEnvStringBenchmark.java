@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the expansion of environment variables in the extra message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReplaceEnvStringBenchmark {
+
+  @Param({"", "Deployed to staging", "Build ${BUILD_NUMBER} of ${JOB_NAME} on ${NODE_NAME}"})
+  private String extraMessage;
+
+  private AbstractBuild build;
+  private BaseNotifier notifier;
+
+  @Setup
+  public void setUp() {
+    build = Stubs.build(BuildChain.succeeded(), 0);
+    EnvVars envVars = new EnvVars();
+    for (int i = 0; i < 100; i++) {
+      envVars.put("VARIABLE_" + i, "value " + i);
+    }
+    envVars.put("BUILD_NUMBER", "42");
+    envVars.put("JOB_NAME", "benchmark-project");
+    envVars.put("NODE_NAME", "master");
+    Stubs.environment(build, envVars);
+    notifier = new BaseNotifier(null, null, null, null, null, false, extraMessage) {
+      @Override
+      protected Message createMessage(Targets targets, Run<?, ?> build, Launcher launcher,
+                                      TaskListener listener) {
+        return new Stubs.NoOpMessage();
+      }
+    };
+  }
+
+  @Benchmark
+  public String replaceEnvString() {
+    return notifier.replaceEnvString(build, notifier.getExtraMessage());
+  }
+
+}
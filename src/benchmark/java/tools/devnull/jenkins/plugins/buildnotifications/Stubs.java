@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.TaskListener;
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Lightweight stand-ins used by the benchmarks. Mocks are created once in the setup, so only the plugin code is
+ * measured.
+ */
+public class Stubs {
+
+  /**
+   * Creates a finished build of the given chain with the given number of changes.
+   */
+  public static AbstractBuild build(BuildChain chain, int changes) {
+    AbstractBuild build = chain.get();
+    List<ChangeLogSet.Entry> entries = new ArrayList<>(changes);
+    for (int i = 0; i < changes; i++) {
+      entries.add(change("Change number " + i + " with a commit message of a reasonable size", "author" + (i % 7)));
+    }
+    ChangeLogSet changeSet = mock(ChangeLogSet.class);
+    when(changeSet.iterator()).thenAnswer(invocation -> entries.iterator());
+    when(changeSet.getItems()).thenReturn(entries.toArray());
+    when(changeSet.isEmptySet()).thenReturn(entries.isEmpty());
+    when(build.getChangeSet()).thenReturn(changeSet);
+
+    AbstractProject project = mock(AbstractProject.class);
+    when(project.getName()).thenReturn("benchmark-project");
+    when(project.getFullName()).thenReturn("folder/benchmark-project");
+    when(build.getProject()).thenReturn(project);
+    when(build.getParent()).thenReturn(project);
+    when(build.getNumber()).thenReturn(42);
+    when(build.getUrl()).thenReturn("job/benchmark-project/42/");
+    return build;
+  }
+
+  /**
+   * Makes the given build expose the given environment variables.
+   */
+  public static void environment(AbstractBuild build, EnvVars envVars) {
+    try {
+      when(build.getEnvironment(any(TaskListener.class))).thenReturn(envVars);
+    } catch (IOException | InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static ChangeLogSet.Entry change(String message, String author) {
+    ChangeLogSet.Entry entry = mock(ChangeLogSet.Entry.class);
+    User user = mock(User.class);
+    when(user.toString()).thenReturn(author);
+    when(user.getFullName()).thenReturn(author);
+    when(entry.getMsg()).thenReturn(message);
+    when(entry.getAuthor()).thenReturn(user);
+    return entry;
+  }
+
+  /**
+   * A message that is built but never sent.
+   */
+  public static class NoOpMessage implements Message {
+
+    private final Payload payload;
+
+    public NoOpMessage() {
+      this(Payload.EMPTY);
+    }
+
+    private NoOpMessage(Payload payload) {
+      this.payload = payload;
+    }
+
+    @Override
+    public Payload getPayload() {
+      return payload;
+    }
+
+    @Override
+    public Message withPayload(Payload payload) {
+      return new NoOpMessage(payload);
+    }
+
+    @Override
+    public List<String> getRecipients() {
+      return Collections.singletonList("benchmark");
+    }
+
+    @Override
+    public DeliveryResult send(Collection<String> recipients) {
+      return new DeliveryResult(Collections.emptyList());
+    }
+
+  }
+
+  /**
+   * A dispatcher that drops every message.
+   */
+  public static class NoOpDispatcher extends NotificationDispatcher {
+
+    public NoOpDispatcher() {
+      super(1, 1);
+    }
+
+    @Override
+    public boolean dispatch(Message message, String sequence) {
+      return true;
+    }
+
+  }
+
+}
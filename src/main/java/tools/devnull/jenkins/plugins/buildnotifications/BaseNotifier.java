@@ -27,29 +27,31 @@
 
 package tools.devnull.jenkins.plugins.buildnotifications;
 
-import hudson.EnvVars;
+import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
+import hudson.model.Run;
+import hudson.model.TaskListener;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
-import hudson.util.LogTaskListener;
 import jenkins.model.Jenkins;
+import jenkins.tasks.SimpleBuildStep;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import static java.util.logging.Level.SEVERE;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * A base class for all notifiers.
+ * A base class for all notifiers. Notifiers work with any kind of build, so they can also be used in Pipeline jobs
+ * (directly or through the {@link BuildNotifyStep buildNotify} step).
  *
  * @author Ataxexe
  */
-public abstract class BaseNotifier extends Notifier {
-
-  private static final Logger logger = Logger.getLogger(TelegramNotifier.class.getName());
+public abstract class BaseNotifier extends Notifier implements SimpleBuildStep {
 
   private final String globalTarget;
   private final String successfulTarget;
@@ -59,6 +61,9 @@ public abstract class BaseNotifier extends Notifier {
   private final boolean sendIfSuccess;
 
   private final String extraMessage;
+  private String messageTemplate;
+
+  private transient Map<BuildStatus, Targets> routes;
 
   /**
    * Creates a new notifier based on the given parameters
@@ -85,26 +90,54 @@ public abstract class BaseNotifier extends Notifier {
     this.fixedTarget = fixedTarget;
     this.sendIfSuccess = sendIfSuccess;
     this.extraMessage = extraMessage;
+    this.routes = createRoutes();
+  }
+
+  protected Object readResolve() {
+    this.routes = createRoutes();
+    return this;
   }
 
   /**
-   * Replace Env variables to value.
+   * Resolves the targets of each build status. A status without a specific target falls back to the global target
+   * (successful builds only fall back if {@link #isSendIfSuccess()} is set).
+   */
+  private Map<BuildStatus, Targets> createRoutes() {
+    Targets global = Targets.parse(globalTarget);
+    Map<BuildStatus, Targets> routes = new EnumMap<>(BuildStatus.class);
+    routes.put(BuildStatus.BROKEN, route(brokenTarget, global));
+    routes.put(BuildStatus.STILL_BROKEN, route(stillBrokenTarget, global));
+    routes.put(BuildStatus.FIXED, route(fixedTarget, global));
+    routes.put(BuildStatus.SUCCESSFUL, route(successfulTarget, sendIfSuccess ? global : Targets.NONE));
+    return Collections.unmodifiableMap(routes);
+  }
+
+  private static Targets route(String target, Targets fallback) {
+    Targets targets = Targets.parse(target);
+    return targets.isEmpty() ? fallback : targets;
+  }
+
+  /**
+   * Replace Env variables to value. The environment of the build is only computed if the message references a
+   * variable and is shared with the other notifiers of the build.
    * @param build
    * @param message
    * @return
+   * @see BuildEnvironment
    */
-  public String replaceEnvString(AbstractBuild build, String message) {
-    EnvVars envVars = new EnvVars();
-
-    try {
-      envVars = build.getEnvironment(new LogTaskListener(logger, Level.INFO));
-    } catch (IOException e) {
-      logger.log(SEVERE, e.getMessage(), e);
-    } catch (InterruptedException e) {
-      logger.log(SEVERE, e.getMessage(), e);
-    }
+  public String replaceEnvString(Run<?, ?> build, String message) {
+    return BuildEnvironment.expand(build, message);
+  }
 
-    return envVars.expand(message);
+  /**
+   * Creates the payload with the content configured in this notifier. The details of the build are added to it when
+   * the notification is sent.
+   *
+   * @param build the build to notify
+   * @return the payload of the message
+   */
+  protected Payload createPayload(Run<?, ?> build) {
+    return Payload.builder().extraMessage(replaceEnvString(build, getExtraMessage())).build();
   }
 
   public String getGlobalTarget() {
@@ -135,54 +168,79 @@ public abstract class BaseNotifier extends Notifier {
     return extraMessage;
   }
 
+  public String getMessageTemplate() {
+    return messageTemplate;
+  }
+
+  /**
+   * Sets the template used to render the message text, overriding the one configured for the notification service.
+   *
+   * @param messageTemplate the template to use
+   * @see MessageTemplate
+   */
+  @DataBoundSetter
+  public void setMessageTemplate(String messageTemplate) {
+    this.messageTemplate = messageTemplate;
+  }
+
   @Override
   public BuildStepMonitor getRequiredMonitorService() {
-    return BuildStepMonitor.BUILD;
+    return BuildStepMonitor.NONE;
   }
 
   @Override
   public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
       throws InterruptedException, IOException {
-    String target = null;
-    BuildStatus status = BuildStatus.of(build);
-    switch (status) {
-      case BROKEN:
-        target = this.brokenTarget;
-        break;
-      case STILL_BROKEN:
-        target = this.stillBrokenTarget;
-        break;
-      case FIXED:
-        target = this.fixedTarget;
-        break;
-      case SUCCESSFUL:
-        target = this.successfulTarget;
-        break;
+    perform(build, build.getWorkspace(), launcher, listener);
+    return true;
+  }
+
+  @Override
+  public void perform(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener)
+      throws InterruptedException, IOException {
+    BuildNotifier notifier = notifierFor(build, launcher, listener);
+    if (notifier != null) {
+      notifier.sendNotification();
     }
-    if (target == null || target.isEmpty()) {
-      if (status != BuildStatus.SUCCESSFUL || sendIfSuccess) {
-        target = this.globalTarget;
-      }
+  }
+
+  /**
+   * Sends the notification about the given build and returns the outcome of its first delivery attempt. Unlike
+   * {@link #perform(Run, FilePath, Launcher, TaskListener)}, the notification is never merged with the ones of other
+   * builds, since the caller is waiting for it.
+   *
+   * @param build    the build to notify
+   * @param launcher the launcher of the build
+   * @param listener the listener of the build
+   * @return the outcome of the delivery (an empty result if the build status has no target)
+   */
+  public CompletableFuture<DeliveryResult> deliver(Run<?, ?> build, Launcher launcher, TaskListener listener) {
+    BuildNotifier notifier = notifierFor(build, launcher, listener);
+    if (notifier == null) {
+      return CompletableFuture.completedFuture(new DeliveryResult(Collections.emptyList()));
     }
-    if (target != null && !target.isEmpty()) {
-      Message message = createMessage(target, build, launcher, listener);
-      BuildNotifier notifier = createNotifier(build, message);
-      notifier.sendNotification();
+    return notifier.deliver();
+  }
+
+  private BuildNotifier notifierFor(Run<?, ?> build, Launcher launcher, TaskListener listener) {
+    Targets targets = routes.get(Notification.of(build).getStatus());
+    if (targets.isEmpty()) {
+      return null;
     }
-    return true;
+    return createNotifier(build, createMessage(targets, build, launcher, listener));
   }
 
-  protected BuildNotifier createNotifier(AbstractBuild<?, ?> build, Message message) {
+  protected BuildNotifier createNotifier(Run<?, ?> build, Message message) {
     return new BuildNotifier(message, build, Jenkins.getInstance().getRootUrl());
   }
 
   /**
    * Creates the message for notifying users about the build. The parameters are the same passed to
-   * {@link #perform(AbstractBuild, Launcher, BuildListener)} plus the {@code target} of the message.
+   * {@link #perform(Run, FilePath, Launcher, TaskListener)} plus the {@code targets} of the message.
    */
-  protected abstract Message createMessage(String target,
-                                           AbstractBuild<?, ?> build,
+  protected abstract Message createMessage(Targets targets,
+                                           Run<?, ?> build,
                                            Launcher launcher,
-                                           BuildListener listener);
+                                           TaskListener listener);
 
 }
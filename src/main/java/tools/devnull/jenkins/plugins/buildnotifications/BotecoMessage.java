@@ -27,88 +27,107 @@
 package tools.devnull.jenkins.plugins.buildnotifications;
 
 import net.sf.json.JSONObject;
-import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.methods.RequestEntity;
 
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.logging.Logger;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A class that represents a boteco message.
  */
 public class BotecoMessage implements Message {
 
-  private static final Logger LOGGER = Logger.getLogger(BotecoMessage.class.getName());
+  /**
+   * The name used to share the fan out between Boteco messages
+   */
+  public static final String PROVIDER = "boteco";
 
+  private final String eventId;
   private final String endpoint;
+  private final Payload payload;
 
-  private String extraMessage;
-  private String content;
-  private String title;
-  private String url;
-  private String priority = "normal";
-
-  public BotecoMessage(String eventId, String endpoint, String extraMessage) {
+  public BotecoMessage(String eventId, String endpoint, Payload payload) {
+    this.eventId = eventId;
     if (endpoint.endsWith("/")) {
       this.endpoint = endpoint + eventId;
     } else {
       this.endpoint = endpoint + "/" + eventId;
     }
+    this.payload = payload;
+  }
 
-    this.extraMessage = extraMessage;
+  private BotecoMessage(BotecoMessage message, Payload payload) {
+    this.eventId = message.eventId;
+    this.endpoint = message.endpoint;
+    this.payload = payload;
   }
 
   @Override
-  public void setContent(String content) {
-    this.content = content;
+  public Payload getPayload() {
+    return payload;
   }
 
   @Override
-  public void setTitle(String title) {
-    this.title = title;
+  public Message withPayload(Payload payload) {
+    return new BotecoMessage(this, payload);
   }
 
   @Override
-  public void setUrl(String url, String title) {
-    this.url = url;
+  public String getProvider() {
+    return PROVIDER;
   }
 
   @Override
-  public void highPriority() {
-    this.priority = "high";
+  public String getRoute() {
+    return PROVIDER + ":" + endpoint + ":" + eventId;
   }
 
   @Override
-  public void normalPriority() {
-    this.priority = "normal";
+  public List<String> getRecipients() {
+    return Collections.singletonList(eventId);
   }
 
   @Override
-  public void lowPriority() {
-    this.priority = "low";
+  public DeliveryResult send(Collection<String> recipients) {
+    return FanOut.of(PROVIDER).send(recipients, delivery());
   }
 
   @Override
-  public void send() {
-    HttpClient client = new HttpClient();
-    PostMethod post = new PostMethod(endpoint);
-    post.setRequestHeader("Content-Type", "application/json; charset=utf-8");
+  public CompletableFuture<DeliveryResult> sendAsync(Collection<String> recipients) {
+    return FanOut.of(PROVIDER).sendAsync(recipients, delivery());
+  }
+
+  /**
+   * @return the json document sent to every event
+   */
+  byte[] body() {
     Map<String, String> values = new HashMap<String, String>();
-    values.put("title", title);
-    values.put("text", content + "\n\n" + extraMessage);
-    values.put("url", url);
-    values.put("priority", priority);
-    try {
-      post.setRequestEntity(new StringRequestEntity(JSONObject.fromObject(values).toString(),
-          "application/json", "UTF-8"));
-      client.executeMethod(post);
-    } catch (IOException e) {
-      LOGGER.severe("Error while sending notification: " + e.getMessage());
-      e.printStackTrace();
-    }
+    values.put("title", payload.getTitle());
+    values.put("text", payload.getContent() + "\n\n" + payload.getExtraMessage());
+    values.put("url", payload.getUrl());
+    values.put("priority", payload.getPriority().name().toLowerCase());
+    return JSONObject.fromObject(values).toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Renders and encodes the message once and returns the delivery shared by its events
+   */
+  private FanOut.Delivery delivery() {
+    // the body is the same for every event, so the entity (which is repeatable) is shared by their requests
+    RequestEntity body = DeliveryMetrics.of(PROVIDER).render(
+        () -> new ByteArrayRequestEntity(body(), "application/json; charset=utf-8"));
+    return event -> {
+      PostMethod post = new PostMethod(endpoint);
+      post.setRequestEntity(body);
+      return NotificationHttpClient.get().execute(PROVIDER, post);
+    };
   }
 
 }
@@ -28,9 +28,9 @@ package tools.devnull.jenkins.plugins.buildnotifications;
 
 import hudson.Extension;
 import hudson.Launcher;
-import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
-import hudson.model.BuildListener;
+import hudson.model.Run;
+import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Publisher;
 import net.sf.json.JSONObject;
@@ -59,9 +59,9 @@ public class BotecoNotifier extends BaseNotifier {
   }
 
   @Override
-  protected Message createMessage(String target, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+  protected Message createMessage(Targets targets, Run<?, ?> build, Launcher launcher, TaskListener listener) {
     BotecoDescriptor descriptor = (BotecoDescriptor) getDescriptor();
-    return new BotecoMessage(target, descriptor.endpoint, replaceEnvString(build, getExtraMessage()));
+    return new BotecoMessage(targets.toString(), descriptor.endpoint, createPayload(build));
   }
 
   /**
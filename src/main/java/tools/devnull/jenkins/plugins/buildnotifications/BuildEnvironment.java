@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.EnvVars;
+import hudson.model.Run;
+import hudson.util.LogTaskListener;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.SEVERE;
+
+/**
+ * Computes the environment of a build once and shares it between every notifier of the build. Entries are weakly
+ * referenced by the build, so they go away together with it.
+ *
+ * @author Ataxexe
+ */
+public class BuildEnvironment {
+
+  private static final Logger logger = Logger.getLogger(BuildEnvironment.class.getName());
+
+  private static final Map<Run<?, ?>, EnvVars> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+  private BuildEnvironment() {
+
+  }
+
+  /**
+   * Returns the environment of the given build, computing it only on the first call. An environment that could not
+   * be computed is not kept, so the next call tries again.
+   *
+   * @param build the build
+   * @return the environment of the build (empty if it could not be computed)
+   */
+  public static EnvVars of(Run<?, ?> build) {
+    EnvVars envVars = cache.get(build);
+    if (envVars == null) {
+      envVars = compute(build);
+      if (envVars == null) {
+        return new EnvVars();
+      }
+      cache.put(build, envVars);
+    }
+    return envVars;
+  }
+
+  /**
+   * Expands the variables referenced by the given text using the environment of the given build. The environment is
+   * not computed if the text doesn't reference any variable.
+   *
+   * @param build the build
+   * @param text  the text to expand
+   * @return the expanded text
+   */
+  public static String expand(Run<?, ?> build, String text) {
+    if (text == null || text.indexOf('$') < 0) {
+      return text;
+    }
+    return of(build).expand(text);
+  }
+
+  private static EnvVars compute(Run<?, ?> build) {
+    try {
+      return build.getEnvironment(new LogTaskListener(logger, Level.INFO));
+    } catch (IOException e) {
+      logger.log(SEVERE, e.getMessage(), e);
+    } catch (InterruptedException e) {
+      logger.log(SEVERE, e.getMessage(), e);
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Descriptor;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.BuildStepMonitor;
+import hudson.tasks.Notifier;
+import hudson.tasks.Publisher;
+import jenkins.model.Jenkins;
+import jenkins.tasks.SimpleBuildStep;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single publisher that notifies many destinations (each one a notifier of a notification service). The messages
+ * of all destinations are handed to the {@link NotificationDispatcher dispatcher} at once and delivered
+ * concurrently by its pool, so the slowest service doesn't delay the others.
+ *
+ * @author Ataxexe
+ */
+public class BuildNotificationsPublisher extends Notifier implements SimpleBuildStep {
+
+  private static final Logger LOGGER = Logger.getLogger(BuildNotificationsPublisher.class.getName());
+
+  private final List<BaseNotifier> destinations;
+
+  /**
+   * Creates a new publisher based on the given parameters
+   *
+   * @param destinations the notifiers of each destination
+   */
+  @DataBoundConstructor
+  public BuildNotificationsPublisher(List<BaseNotifier> destinations) {
+    this.destinations = destinations != null ? new ArrayList<>(destinations) : new ArrayList<>();
+  }
+
+  public List<BaseNotifier> getDestinations() {
+    return Collections.unmodifiableList(destinations);
+  }
+
+  @Override
+  public BuildStepMonitor getRequiredMonitorService() {
+    return BuildStepMonitor.NONE;
+  }
+
+  @Override
+  public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+      throws InterruptedException, IOException {
+    perform(build, build.getWorkspace(), launcher, listener);
+    return true;
+  }
+
+  @Override
+  public void perform(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener)
+      throws InterruptedException, IOException {
+    for (BaseNotifier destination : destinations) {
+      try {
+        destination.perform(build, workspace, launcher, listener);
+      } catch (RuntimeException e) {
+        // a misconfigured destination must not prevent the others from being notified
+        LOGGER.log(Level.SEVERE, "Error while notifying " + destination.getDescriptor().getDisplayName(), e);
+      }
+    }
+  }
+
+  /**
+   * The descriptor for the BuildNotificationsPublisher plugin
+   */
+  @Extension
+  public static class BuildNotificationsDescriptor extends BuildStepDescriptor<Publisher> {
+
+    /**
+     * @return the descriptors of the notifiers that can be used as destinations
+     */
+    public List<Descriptor<Publisher>> getDestinationDescriptors() {
+      Jenkins jenkins = Jenkins.getInstance();
+      return Arrays.asList(
+          jenkins.getDescriptorByType(TelegramNotifier.TelegramDescriptor.class),
+          jenkins.getDescriptorByType(SlackNotifier.SlackDescriptor.class),
+          jenkins.getDescriptorByType(PushoverNotifier.PushoverDescriptor.class),
+          jenkins.getDescriptorByType(BotecoNotifier.BotecoDescriptor.class)
+      );
+    }
+
+    @Override
+    public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+      return true;
+    }
+
+    @Override
+    public String getDisplayName() {
+      return "Build Notifications";
+    }
+
+  }
+
+}
@@ -26,11 +26,9 @@
  */
 package tools.devnull.jenkins.plugins.buildnotifications;
 
-import hudson.model.AbstractBuild;
-import hudson.model.Result;
-import hudson.scm.ChangeLogSet;
+import hudson.model.Run;
 
-import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 
@@ -44,92 +42,65 @@ public class BuildNotifier {
   private static final Logger LOGGER = Logger.getLogger(BuildNotifier.class.getName());
 
   private final Message message;
-  private final AbstractBuild build;
-  private final BuildStatus status;
-  private final Result result;
+  private final Notification notification;
+  private final String sequence;
   private final String baseUrl;
+  private final NotificationDispatcher dispatcher;
 
   /**
-   * Constructs a new BuildNotifier based on the given objects
+   * Constructs a new BuildNotifier that uses the plugin-wide dispatcher
    *
-   * @param message the message to populate and send
+   * @param message the message to send (the notification about the build is added to its payload)
    * @param build   the target build
+   * @see #BuildNotifier(Message, Run, String, NotificationDispatcher)
+   */
+  public BuildNotifier(Message message, Run<?, ?> build, String baseUrl) {
+    this(message, build, baseUrl, NotificationDispatcher.get());
+  }
+
+  /**
+   * Constructs a new BuildNotifier based on the given objects
+   *
+   * @param message    the message to send (the notification about the build is added to its payload)
+   * @param build      the target build
+   * @param dispatcher the dispatcher that delivers the message
    */
-  public BuildNotifier(Message message, AbstractBuild build, String baseUrl) {
-    this.message = message;
-    this.build = build;
-    this.status = BuildStatus.of(build);
-    this.result = build.getResult();
+  public BuildNotifier(Message message, Run<?, ?> build, String baseUrl, NotificationDispatcher dispatcher) {
+    this.notification = Notification.of(build);
+    this.message = message.withPayload(message.getPayload().toBuilder().notification(notification, baseUrl).build());
+    this.sequence = build.getParent().getFullName() + ":" + message.getClass().getName() + ":" +
+        message.getRecipients();
     this.baseUrl = baseUrl;
+    this.dispatcher = dispatcher;
   }
 
   /**
-   * Sends the notification through the given message object.
+   * Hands the message to the dispatcher. The message is delivered asynchronously, so
+   * this method returns as soon as the message is enqueued. Messages of the same job to the same targets are
+   * delivered in the order they are sent.
    */
   public void sendNotification() {
     LOGGER.info("Sending notification...");
 
-    setPriority();
-    setContent();
-    setTitle();
-    setUrl();
-
-    message.send();
-  }
-
-  private void setUrl() {
-    message.setUrl(String.format("%s%s", baseUrl, build.getUrl()), "Go to build");
-  }
-
-  private void setContent() {
-    if (build.getChangeSet().getItems().length == 0) {
-      message.setContent(this.getResultString());
-    } else {
-      StringBuilder changes = new StringBuilder();
-
-      for (Iterator<? extends ChangeLogSet.Entry> i = build.getChangeSet().iterator(); i.hasNext(); ) {
-        ChangeLogSet.Entry change = i.next();
-        changes.append("\n");
-        changes.append(change.getMsg());
-        changes.append(" - ");
-        changes.append(change.getAuthor());
-      }
-
-      message.setContent(String.format("%s%n%s", this.getResultString(), changes.toString()));
+    if (notification.getStatus() == BuildStatus.STILL_BROKEN
+        && StormCoalescer.get().offer(message, sequence, notification.getJob(), notification.getNumber(), baseUrl)) {
+      return;
     }
+    // a digest still holding a previous notification of the job is delivered first
+    StormCoalescer.get().flush(sequence);
+    dispatcher.dispatch(message, sequence);
   }
 
-  private void setTitle() {
-    message.setTitle(String.format(
-        "%s - Build #%d of %s",
-        status.tag(),
-        build.getNumber(),
-        build.getProject().getName()
-    ));
-  }
-
-  private void setPriority() {
-    switch (status) {
-      case FIXED:
-        message.normalPriority();
-        break;
-      case BROKEN:
-      case STILL_BROKEN:
-        message.highPriority();
-        break;
-      case SUCCESSFUL:
-        message.lowPriority();
-        break;
-    }
-  }
-
-  private String getResultString(){
-    String result = (new NotifierSettings()).alternativeResult(this.result);
-    if(result != null && result.length() > 0){
-      return result;
-    }else{
-      return this.result.toString();
-    }
+  /**
+   * Hands the message to the dispatcher, returning the outcome of its first delivery
+   * attempt. The message is never merged with the notifications of other builds.
+   *
+   * @return the outcome of the first delivery attempt
+   * @see NotificationDispatcher#dispatchAsync(Message, String)
+   */
+  public CompletableFuture<DeliveryResult> deliver() {
+    StormCoalescer.get().flush(sequence);
+    return dispatcher.dispatchAsync(message, sequence);
   }
 
 }
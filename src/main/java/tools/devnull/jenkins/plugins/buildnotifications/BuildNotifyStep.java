@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.ListBoxModel;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Pipeline step that notifies the current build status:
+ * <pre>
+ *   buildNotify service: 'telegram', target: '12345'
+ * </pre>
+ * The notification is enqueued and the step returns right away, without holding an executor or the Pipeline
+ * thread while the message is delivered. Callers that need to know if the message was delivered can pass
+ * {@code wait: true}: the step then returns {@code true} if every target received the message in the first
+ * attempt (still without holding an executor while waiting).
+ * <p>
+ * Either way the message goes through the {@link NotificationDispatcher}, so failed deliveries are kept in the
+ * {@link Outbox} and retried after the step returns.
+ *
+ * @author Ataxexe
+ */
+public class BuildNotifyStep extends Step {
+
+  private static final Logger LOGGER = Logger.getLogger(BuildNotifyStep.class.getName());
+
+  private final String service;
+  private final String target;
+  private String extraMessage;
+  private String messageTemplate;
+  private boolean wait;
+
+  @DataBoundConstructor
+  public BuildNotifyStep(String service, String target) {
+    this.service = service;
+    this.target = target;
+  }
+
+  public String getService() {
+    return service;
+  }
+
+  public String getTarget() {
+    return target;
+  }
+
+  public String getExtraMessage() {
+    return extraMessage;
+  }
+
+  @DataBoundSetter
+  public void setExtraMessage(String extraMessage) {
+    this.extraMessage = extraMessage;
+  }
+
+  public String getMessageTemplate() {
+    return messageTemplate;
+  }
+
+  @DataBoundSetter
+  public void setMessageTemplate(String messageTemplate) {
+    this.messageTemplate = messageTemplate;
+  }
+
+  public boolean isWait() {
+    return wait;
+  }
+
+  /**
+   * Sets if the step should wait for the delivery and return its outcome.
+   *
+   * @param wait {@code true} to wait for the delivery
+   */
+  @DataBoundSetter
+  public void setWait(boolean wait) {
+    this.wait = wait;
+  }
+
+  /**
+   * Creates the notifier of the configured service. Since the step is called explicitly, the target receives the
+   * notification whatever the build status is.
+   *
+   * @return the notifier that sends the notification
+   * @throws AbortException if the service is unknown
+   */
+  BaseNotifier createNotifier() throws AbortException {
+    BaseNotifier notifier;
+    switch (String.valueOf(service).toLowerCase()) {
+      case "telegram":
+        notifier = new TelegramNotifier(target, null, null, null, null, true, extraMessage);
+        break;
+      case "slack":
+        notifier = new SlackNotifier(target, null, null, null, null, true, extraMessage);
+        break;
+      case "pushover":
+        notifier = new PushoverNotifier(target, null, null, null, null, true, extraMessage);
+        break;
+      case "boteco":
+        notifier = new BotecoNotifier(target, null, null, null, null, true, extraMessage);
+        break;
+      default:
+        throw new AbortException("Unknown notification service: " + service);
+    }
+    notifier.setMessageTemplate(messageTemplate);
+    return notifier;
+  }
+
+  @Override
+  public StepExecution start(StepContext context) throws Exception {
+    return new Execution(context, this);
+  }
+
+  private static class Execution extends StepExecution {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient BuildNotifyStep step;
+    private transient CompletableFuture<DeliveryResult> delivery;
+    // the step may be stopped while the delivery completes, but its context must be completed only once
+    private transient AtomicBoolean completed = new AtomicBoolean();
+
+    private Execution(StepContext context, BuildNotifyStep step) {
+      super(context);
+      this.step = step;
+    }
+
+    @Override
+    public boolean start() throws Exception {
+      Run<?, ?> run = getContext().get(Run.class);
+      TaskListener listener = getContext().get(TaskListener.class);
+      BaseNotifier notifier = step.createNotifier();
+      // populating the message reads the build (and its changes), which is kept out of the Pipeline thread;
+      // the messages don't need a node, so there is no launcher to pass
+      CompletableFuture<CompletableFuture<DeliveryResult>> enqueued =
+          FanOut.async(() -> notifier.deliver(run, null, listener));
+      if (enqueued.handle((result, error) -> error instanceof RejectedExecutionException).getNow(false)) {
+        // too many asynchronous tasks, the message is populated here instead of being lost
+        enqueued = CompletableFuture.completedFuture(notifier.deliver(run, null, listener));
+      }
+      delivery = enqueued.thenCompose(Function.identity());
+      if (!step.wait) {
+        delivery.whenComplete((result, error) -> {
+          if (error != null) {
+            // the build log may be closed by now, so the error is also logged by Jenkins
+            LOGGER.log(Level.WARNING, "Notification of " + run.getExternalizableId() + " not delivered", error);
+            listener.getLogger().println("Notification not delivered: " + error.getMessage());
+          }
+        });
+        succeed(null);
+        return true;
+      }
+      delivery.whenComplete((result, error) -> {
+        if (error != null) {
+          listener.getLogger().println("Notification not delivered: " + error.getMessage());
+          succeed(false);
+        } else {
+          for (RecipientResult failure : result.getFailures()) {
+            listener.getLogger().println("Notification not delivered to " + failure);
+          }
+          succeed(result.isSuccessful());
+        }
+      });
+      return false;
+    }
+
+    @Override
+    public void stop(Throwable cause) throws Exception {
+      if (completed.compareAndSet(false, true)) {
+        getContext().onFailure(cause);
+      }
+      if (delivery != null) {
+        // the message is still delivered, only the step stops waiting for it
+        delivery.cancel(false);
+      }
+    }
+
+    @Override
+    public void onResume() {
+      // the outcome of the delivery is lost on restart, but pending recipients are still notified from the outbox
+      try {
+        getContext().get(TaskListener.class).getLogger()
+            .println("Jenkins restarted while waiting for the notification, its delivery result is unknown");
+      } catch (IOException | InterruptedException e) {
+        // nothing to report
+      }
+      succeed(false);
+    }
+
+    private void succeed(Object result) {
+      if (completed.compareAndSet(false, true)) {
+        getContext().onSuccess(result);
+      }
+    }
+
+    private Object readResolve() {
+      completed = new AtomicBoolean();
+      return this;
+    }
+
+  }
+
+  @Extension(optional = true)
+  public static class BuildNotifyDescriptor extends StepDescriptor {
+
+    @Override
+    public Set<? extends Class<?>> getRequiredContext() {
+      return new HashSet<>(Arrays.asList(Run.class, TaskListener.class));
+    }
+
+    @Override
+    public String getFunctionName() {
+      return "buildNotify";
+    }
+
+    @Override
+    public String getDisplayName() {
+      return "Send a build notification";
+    }
+
+    public ListBoxModel doFillServiceItems() {
+      ListBoxModel items = new ListBoxModel();
+      items.add("Telegram", "telegram");
+      items.add("Slack", "slack");
+      items.add("Pushover", "pushover");
+      items.add("Boteco", "boteco");
+      return items;
+    }
+
+  }
+
+}
@@ -27,8 +27,8 @@
 
 package tools.devnull.jenkins.plugins.buildnotifications;
 
-import hudson.model.AbstractBuild;
 import hudson.model.Result;
+import hudson.model.Run;
 
 /**
  * Enumeration of the possible build status for notification purposes.
@@ -61,35 +61,50 @@ public enum BuildStatus {
   }
 
   public String tag() {
-    String tag = (new NotifierSettings()).alternativeMSG(this);
-    if(tag!=null && tag.length()>0) {
-        return tag;
-    } else {
-        return this.tag;
-    }
+    String tag = NotifierSettings.labels().of(this);
+    return tag != null ? tag : this.tag;
   }
 
   /**
-   * Returns the {@code BuildStatus} that represents the given build. If the given build has a previous build, it
-   * must be finished.
+   * Returns the {@code BuildStatus} that represents the given build, compared to the last build completed before it.
+   * Builds still running are ignored, so concurrent builds of the same job can be notified without waiting for each
+   * other.
+   * <p>
+   * The result of the previous build is taken from the {@link ResultIndex} if possible, so its record doesn't need to
+   * be loaded.
    *
    * @param build the build to analyze
    * @return the status that represents the given build
    */
-  public static BuildStatus of(AbstractBuild build) {
-    AbstractBuild previousBuild = build.getPreviousBuild();
-    if (build.getResult() == Result.SUCCESS) {
-      if (previousBuild != null) {
-        return previousBuild.getResult() == Result.SUCCESS ? SUCCESSFUL : FIXED;
-      } else {
-        return SUCCESSFUL;
-      }
+  public static BuildStatus of(Run<?, ?> build) {
+    Result previousResult = ResultIndex.get().previousResult(build);
+    if (previousResult != null) {
+      return of(resultOf(build), previousResult);
+    }
+    Run<?, ?> previousBuild = build.getPreviousCompletedBuild();
+    if (previousBuild != null) {
+      return of(resultOf(build), previousBuild.getResult());
+    }
+    return resultOf(build) == Result.SUCCESS ? SUCCESSFUL : BROKEN;
+  }
+
+  /**
+   * Returns the result of the given build. A Pipeline build that is still running has no result until something
+   * fails, so a missing result means the build succeeded so far.
+   *
+   * @param build the build
+   * @return the result of the build
+   */
+  public static Result resultOf(Run<?, ?> build) {
+    Result result = build.getResult();
+    return result != null ? result : Result.SUCCESS;
+  }
+
+  private static BuildStatus of(Result result, Result previousResult) {
+    if (result == Result.SUCCESS) {
+      return previousResult == Result.SUCCESS ? SUCCESSFUL : FIXED;
     } else {
-      if (previousBuild != null) {
-        return previousBuild.getResult() != Result.SUCCESS ? STILL_BROKEN : BROKEN;
-      } else {
-        return BROKEN;
-      }
+      return previousResult != Result.SUCCESS ? STILL_BROKEN : BROKEN;
     }
   }
 }
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.scm.ChangeLogSet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renders the changes of a build in a single pass over the change set. Only the first entries are rendered (limited
+ * by an entry cap and a character budget), the remaining ones are summarized and every author is counted.
+ *
+ * @author Ataxexe
+ */
+public class ChangelogRenderer {
+
+  /**
+   * The default number of changes rendered
+   */
+  public static final int DEFAULT_MAX_ENTRIES = 20;
+  /**
+   * The default number of characters rendered
+   */
+  public static final int DEFAULT_MAX_CHARACTERS = 2000;
+
+  private final int maxEntries;
+  private final int maxCharacters;
+
+  /**
+   * Creates a new renderer based on the given limits
+   *
+   * @param maxEntries    the number of changes rendered
+   * @param maxCharacters the number of characters rendered
+   */
+  public ChangelogRenderer(int maxEntries, int maxCharacters) {
+    this.maxEntries = maxEntries;
+    this.maxCharacters = maxCharacters;
+  }
+
+  /**
+   * Renders the given changes. Each rendered change takes a line in the form {@code message - author}. If some
+   * changes are left out, a summary with the number of omitted changes is always appended, followed by the changes
+   * per author that still fit in the character budget.
+   *
+   * @param changes the changes to render
+   * @return the rendered changes or an empty string if there is no change
+   */
+  public String render(Iterator<? extends ChangeLogSet.Entry> changes) {
+    StringBuilder result = new StringBuilder();
+    Map<String, Integer> authors = new LinkedHashMap<>();
+    int total = 0;
+    int rendered = 0;
+    boolean full = false;
+    while (changes.hasNext()) {
+      ChangeLogSet.Entry change = changes.next();
+      String author = String.valueOf(change.getAuthor());
+      authors.merge(author, 1, Integer::sum);
+      total++;
+      if (!full) {
+        String line = change.getMsg() + " - " + author;
+        if (rendered < maxEntries && result.length() + line.length() + 1 <= maxCharacters) {
+          if (result.length() > 0) {
+            result.append('\n');
+          }
+          result.append(line);
+          rendered++;
+        } else {
+          full = true;
+        }
+      }
+    }
+    if (rendered < total) {
+      if (result.length() > 0) {
+        result.append('\n');
+      }
+      result.append('+').append(total - rendered).append(" more commits");
+      rollup(result, authors);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Appends the changes per author while they fit in the character budget, keeping room for a line counting the
+   * authors left out.
+   */
+  private void rollup(StringBuilder result, Map<String, Integer> authors) {
+    int omitted = authors.size();
+    for (Map.Entry<String, Integer> author : authors.entrySet()) {
+      String line = "\n  " + author.getKey() + ": " + author.getValue();
+      int reserved = omitted > 1 ? moreAuthors(omitted - 1).length() : 0;
+      if (result.length() + line.length() + reserved > maxCharacters) {
+        break;
+      }
+      result.append(line);
+      omitted--;
+    }
+    if (omitted > 0) {
+      result.append(moreAuthors(omitted));
+    }
+  }
+
+  private static String moreAuthors(int count) {
+    return "\n  +" + count + " more authors";
+  }
+
+}
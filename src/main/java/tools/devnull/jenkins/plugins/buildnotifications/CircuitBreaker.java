@@ -0,0 +1,257 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * A circuit breaker for a notification service endpoint. The outcome of the last requests to the endpoint is kept
+ * in a sliding window and, once too many of them fail, the circuit opens: requests fail immediately instead of
+ * waiting for a service that is down. After a while a single trial request is let through (half open) and its
+ * outcome decides if the circuit closes again.
+ *
+ * @author Ataxexe
+ */
+public class CircuitBreaker {
+
+  private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+  /**
+   * The number of requests kept in the sliding window
+   */
+  public static final int WINDOW_SIZE = 20;
+  /**
+   * The number of requests in the window needed to compute the failure rate
+   */
+  public static final int MIN_REQUESTS = 5;
+  /**
+   * The failure rate that opens the circuit
+   */
+  public static final double FAILURE_RATE = 0.5;
+  /**
+   * How long the circuit stays open before a trial request
+   */
+  public static final long OPEN_DURATION = TimeUnit.SECONDS.toNanos(30);
+
+  private static final Map<String, CircuitBreaker> ENDPOINTS = new ConcurrentHashMap<>();
+
+  private static volatile Policy policy = Policy.RETRY;
+
+  private final String endpoint;
+  private final LongSupplier clock;
+  private final boolean[] window = new boolean[WINDOW_SIZE];
+
+  private int position;
+  private int requests;
+  private int failures;
+  private State state = State.CLOSED;
+  private long openedAt;
+  private boolean trying;
+
+  CircuitBreaker(String endpoint, LongSupplier clock) {
+    this.endpoint = endpoint;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the circuit breaker of the given endpoint.
+   *
+   * @param endpoint the endpoint (the host of the notification service)
+   * @return the circuit breaker of the given endpoint
+   */
+  public static CircuitBreaker of(String endpoint) {
+    return ENDPOINTS.computeIfAbsent(endpoint, host -> new CircuitBreaker(host, System::nanoTime));
+  }
+
+  /**
+   * @return what happens to notifications while a circuit is open
+   */
+  public static Policy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * Sets what happens to notifications while a circuit is open.
+   *
+   * @param policy the policy to use
+   */
+  public static void setPolicy(Policy policy) {
+    CircuitBreaker.policy = policy;
+  }
+
+  /**
+   * Checks if a request can be made to the endpoint.
+   *
+   * @throws OpenException if the circuit is open
+   */
+  public synchronized void acquire() throws OpenException {
+    if (state == State.OPEN && clock.getAsLong() - openedAt >= OPEN_DURATION) {
+      state = State.HALF_OPEN;
+      trying = false;
+    }
+    if (state == State.OPEN || (state == State.HALF_OPEN && trying)) {
+      throw new OpenException(endpoint);
+    }
+    if (state == State.HALF_OPEN) {
+      trying = true;
+    }
+  }
+
+  /**
+   * Records a request that succeeded.
+   */
+  public synchronized void succeeded() {
+    if (state == State.HALF_OPEN) {
+      LOGGER.info("Closing circuit of " + endpoint);
+      reset();
+      state = State.CLOSED;
+    } else {
+      record(false);
+    }
+  }
+
+  /**
+   * Records a request that failed.
+   */
+  public synchronized void failed() {
+    if (state == State.HALF_OPEN) {
+      open();
+    } else {
+      record(true);
+      if (state == State.CLOSED && requests >= MIN_REQUESTS && failures >= FAILURE_RATE * requests) {
+        open();
+      }
+    }
+  }
+
+  /**
+   * Records a request that was aborted by the caller (its deadline expired or its thread was interrupted). It says
+   * nothing about the endpoint, so it doesn't count, but a trial request gives its place to the next one.
+   */
+  public synchronized void released() {
+    if (state == State.HALF_OPEN) {
+      trying = false;
+    }
+  }
+
+  /**
+   * @return the current state of the circuit
+   */
+  public synchronized State getState() {
+    return state;
+  }
+
+  private void record(boolean failure) {
+    if (requests == WINDOW_SIZE) {
+      if (window[position]) {
+        failures--;
+      }
+    } else {
+      requests++;
+    }
+    window[position] = failure;
+    if (failure) {
+      failures++;
+    }
+    position = (position + 1) % WINDOW_SIZE;
+  }
+
+  private void open() {
+    LOGGER.warning(String.format("Opening circuit of %s for %ds", endpoint,
+        TimeUnit.NANOSECONDS.toSeconds(OPEN_DURATION)));
+    reset();
+    state = State.OPEN;
+    openedAt = clock.getAsLong();
+  }
+
+  private void reset() {
+    position = 0;
+    requests = 0;
+    failures = 0;
+    trying = false;
+  }
+
+  /**
+   * The states of a circuit
+   */
+  public enum State {
+    /**
+     * Requests are made normally
+     */
+    CLOSED,
+    /**
+     * Requests fail immediately
+     */
+    OPEN,
+    /**
+     * A single trial request is allowed
+     */
+    HALF_OPEN
+  }
+
+  /**
+   * What happens to notifications that could not be sent because a circuit is open
+   */
+  public enum Policy {
+    /**
+     * Keeps the notifications in the outbox to be retried later
+     */
+    RETRY("Retry later"),
+    /**
+     * Drops the notifications
+     */
+    DROP("Drop the notifications");
+
+    private final String description;
+
+    Policy(String description) {
+      this.description = description;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+  }
+
+  /**
+   * Exception thrown when a request is made to an endpoint while its circuit is open.
+   */
+  public static class OpenException extends IOException {
+
+    public OpenException(String endpoint) {
+      super("Circuit of " + endpoint + " is open");
+    }
+
+  }
+
+}
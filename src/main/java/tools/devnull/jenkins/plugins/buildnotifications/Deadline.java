@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A time budget shared by everything done to deliver a notification. Operations register how they can be aborted
+ * (an http method being executed, for instance) and are aborted once the budget runs out.
+ * <p>
+ * The deadline of the current thread is available through {@link #current()} so it doesn't need to be passed
+ * around the message implementations.
+ *
+ * @author Ataxexe
+ */
+public class Deadline {
+
+  private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+  private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "build-notifications-deadline");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final long expiresAt;
+  private final Set<Registration> registrations = ConcurrentHashMap.newKeySet();
+  private final ScheduledFuture<?> timer;
+  private volatile boolean expired;
+
+  private Deadline(long millis) {
+    this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    this.timer = TIMER.schedule(this::expire, millis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates a deadline that expires after the given time. The deadline must be {@link #close() closed} once the work
+   * is done.
+   *
+   * @param millis the time budget in milliseconds
+   * @return the created deadline
+   */
+  public static Deadline after(long millis) {
+    return new Deadline(millis);
+  }
+
+  /**
+   * @return the deadline of the current thread or {@code null} if there is none
+   */
+  public static Deadline current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Runs the given task with the given deadline as the deadline of the current thread.
+   *
+   * @param deadline the deadline (may be {@code null})
+   * @param task     the task to run
+   * @return the result of the task
+   */
+  public static <T> T within(Deadline deadline, Supplier<T> task) {
+    Deadline previous = CURRENT.get();
+    CURRENT.set(deadline);
+    try {
+      return task.get();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+
+  /**
+   * @return the time left in milliseconds
+   */
+  public long remaining() {
+    if (expired) {
+      return 0;
+    }
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+  }
+
+  /**
+   * @return {@code true} if the time is over
+   */
+  public boolean isExpired() {
+    return expired || remaining() == 0;
+  }
+
+  /**
+   * Checks if there is time left.
+   *
+   * @throws InterruptedIOException if the deadline has expired
+   */
+  public void check() throws InterruptedIOException {
+    if (isExpired()) {
+      throw new InterruptedIOException("Deadline exceeded");
+    }
+  }
+
+  /**
+   * Registers an operation that must be aborted if the deadline expires before it finishes. The operation is aborted
+   * right away if the deadline has already expired.
+   *
+   * @param abort the function that aborts the operation
+   * @return the registration, that must be closed once the operation finishes
+   */
+  public Registration register(Runnable abort) {
+    Registration registration = new Registration(abort);
+    registrations.add(registration);
+    if (expired) {
+      registration.abort();
+    }
+    return registration;
+  }
+
+  /**
+   * Expires this deadline now, aborting every registered operation.
+   */
+  public void expire() {
+    expired = true;
+    for (Registration registration : registrations) {
+      registration.abort();
+    }
+  }
+
+  /**
+   * Releases the resources used by this deadline.
+   */
+  public void close() {
+    timer.cancel(false);
+    registrations.clear();
+  }
+
+  /**
+   * The registration of an operation that can be aborted.
+   */
+  public class Registration implements AutoCloseable {
+
+    private final Runnable abort;
+
+    private Registration(Runnable abort) {
+      this.abort = abort;
+    }
+
+    private void abort() {
+      if (registrations.remove(this)) {
+        abort.run();
+      }
+    }
+
+    /**
+     * Unregisters the operation.
+     */
+    @Override
+    public void close() {
+      registrations.remove(this);
+    }
+
+  }
+
+}
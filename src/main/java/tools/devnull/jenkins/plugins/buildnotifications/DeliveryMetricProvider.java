@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import hudson.Extension;
+import jenkins.metrics.api.MetricProvider;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the {@link DeliveryMetrics delivery metrics} through the Metrics plugin, if it's installed. Counters and
+ * queue sizes are exposed as gauges, while the durations feed {@link Timer timers} of the Metrics plugin, so they get
+ * its rates, percentiles and reporters.
+ *
+ * @author Ataxexe
+ */
+@Extension(optional = true)
+public class DeliveryMetricProvider extends MetricProvider {
+
+  private static final String PREFIX = "build-notifications";
+
+  // each timer listens to its durations once, whatever the number of times the metrics are read
+  private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+  private final MetricSet metrics = () -> {
+    Map<String, Metric> metrics = new HashMap<>();
+    NotificationDispatcher dispatcher = NotificationDispatcher.get();
+    metrics.put(PREFIX + ".queue.size", (Gauge<Integer>) dispatcher::getQueueSize);
+    metrics.put(PREFIX + ".queue.active", (Gauge<Integer>) dispatcher::getActiveCount);
+    for (Payload.Priority priority : Payload.Priority.values()) {
+      metrics.put(PREFIX + ".queue.shed." + priority.name().toLowerCase(),
+          (Gauge<Long>) () -> dispatcher.getShedCount(priority));
+    }
+    metrics.put(PREFIX + ".outbox.size", (Gauge<Integer>) () -> Outbox.get().size());
+    for (String provider : Arrays.asList(TelegramMessage.PROVIDER, SlackMessage.PROVIDER, PushoverMessage.PROVIDER,
+        BotecoMessage.PROVIDER)) {
+      register(metrics, PREFIX + "." + provider, DeliveryMetrics.of(provider));
+    }
+    return metrics;
+  };
+
+  private void register(Map<String, Metric> metrics, String prefix, DeliveryMetrics delivery) {
+    for (DeliveryMetrics.Outcome outcome : DeliveryMetrics.Outcome.values()) {
+      metrics.put(prefix + "." + outcome.key(), (Gauge<Long>) () -> delivery.getCount(outcome));
+    }
+    metrics.put(prefix + ".inFlight", (Gauge<Integer>) delivery::getInFlight);
+    register(metrics, prefix + ".render", delivery.getRender());
+    register(metrics, prefix + ".response", delivery.getResponse());
+    register(metrics, prefix + ".roundTrip", delivery.getRoundTrip());
+  }
+
+  private void register(Map<String, Metric> metrics, String name, DeliveryMetrics.Timer timer) {
+    metrics.put(name, timers.computeIfAbsent(name, key -> {
+      Timer exported = new Timer();
+      timer.listen(nanos -> exported.update(nanos, TimeUnit.NANOSECONDS));
+      return exported;
+    }));
+  }
+
+  @Override
+  public MetricSet getMetricSet() {
+    return metrics;
+  }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import net.sf.json.JSONObject;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Counters and latency histograms of the deliveries made to a notification service. The metrics are kept in memory
+ * since the last restart.
+ *
+ * @author Ataxexe
+ */
+public class DeliveryMetrics {
+
+  private static final Map<String, DeliveryMetrics> PROVIDERS = new ConcurrentHashMap<>();
+
+  private final Map<Outcome, LongAdder> outcomes;
+  private final Timer render = new Timer();
+  private final Timer response = new Timer();
+  private final Timer roundTrip = new Timer();
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private DeliveryMetrics() {
+    Map<Outcome, LongAdder> outcomes = new EnumMap<>(Outcome.class);
+    for (Outcome outcome : Outcome.values()) {
+      outcomes.put(outcome, new LongAdder());
+    }
+    this.outcomes = Collections.unmodifiableMap(outcomes);
+  }
+
+  /**
+   * Returns the metrics of the given notification service.
+   *
+   * @param provider the name of the notification service
+   * @return the metrics of the given notification service
+   */
+  public static DeliveryMetrics of(String provider) {
+    return PROVIDERS.computeIfAbsent(provider, name -> new DeliveryMetrics());
+  }
+
+  /**
+   * @return the metrics of every notification service that was used, by name
+   */
+  public static Map<String, DeliveryMetrics> all() {
+    return Collections.unmodifiableMap(new TreeMap<>(PROVIDERS));
+  }
+
+  /**
+   * Returns the metrics of every notification service together with the state of the delivery queue.
+   *
+   * @return the report as a json object
+   */
+  public static JSONObject report() {
+    NotificationDispatcher dispatcher = NotificationDispatcher.get();
+    JSONObject shed = new JSONObject();
+    for (Payload.Priority priority : Payload.Priority.values()) {
+      shed.element(priority.name().toLowerCase(), dispatcher.getShedCount(priority));
+    }
+    JSONObject queue = new JSONObject()
+        .element("size", dispatcher.getQueueSize())
+        .element("active", dispatcher.getActiveCount())
+        .element("shed", shed)
+        .element("outbox", Outbox.get().size());
+    JSONObject providers = new JSONObject();
+    for (Map.Entry<String, DeliveryMetrics> entry : all().entrySet()) {
+      providers.element(entry.getKey(), entry.getValue().toJson());
+    }
+    return new JSONObject()
+        .element("queue", queue)
+        .element("providers", providers);
+  }
+
+  /**
+   * Renders the text of a message, measuring the time spent.
+   *
+   * @param renderer the function that renders the text
+   * @return the rendered text
+   */
+  public <T> T render(Supplier<T> renderer) {
+    long start = System.nanoTime();
+    try {
+      return renderer.get();
+    } finally {
+      render.update(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Records a delivery that started.
+   */
+  public void started() {
+    inFlight.incrementAndGet();
+  }
+
+  /**
+   * Records the outcome of a delivery that was {@link #started() started}.
+   *
+   * @param result the outcome of the delivery
+   */
+  public void finished(RecipientResult result) {
+    inFlight.decrementAndGet();
+    outcomes.get(Outcome.of(result)).increment();
+  }
+
+  /**
+   * Records the time of an http exchange with the notification service.
+   *
+   * @param response  the time until the response status was received (in nanoseconds)
+   * @param roundTrip the time until the response was consumed (in nanoseconds)
+   */
+  public void exchanged(long response, long roundTrip) {
+    this.response.update(response);
+    this.roundTrip.update(roundTrip);
+  }
+
+  /**
+   * @param outcome the outcome
+   * @return how many deliveries ended with the given outcome
+   */
+  public long getCount(Outcome outcome) {
+    return outcomes.get(outcome).sum();
+  }
+
+  /**
+   * @return how many deliveries are running
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return the time spent rendering the text of messages
+   */
+  public Timer getRender() {
+    return render;
+  }
+
+  /**
+   * @return the time until the notification service responds, including the time to acquire and open a connection
+   */
+  public Timer getResponse() {
+    return response;
+  }
+
+  /**
+   * @return the time of the whole http exchange, including reading the response
+   */
+  public Timer getRoundTrip() {
+    return roundTrip;
+  }
+
+  /**
+   * @return the metrics as a json object
+   */
+  public JSONObject toJson() {
+    JSONObject json = new JSONObject();
+    for (Outcome outcome : Outcome.values()) {
+      json.element(outcome.key, getCount(outcome));
+    }
+    return json.element("inFlight", getInFlight())
+        .element("render", render.toJson())
+        .element("response", response.toJson())
+        .element("roundTrip", roundTrip.toJson());
+  }
+
+  /**
+   * The outcomes of a delivery to a single recipient.
+   */
+  public enum Outcome {
+
+    /**
+     * The notification service accepted the message
+     */
+    DELIVERED("delivered"),
+    /**
+     * The notification service refused the message
+     */
+    REJECTED("rejected"),
+    /**
+     * The notification service asked to slow down
+     */
+    RATE_LIMITED("rateLimited"),
+    /**
+     * The notification service could not be reached or failed with a transient error
+     */
+    FAILED("failed");
+
+    private final String key;
+
+    Outcome(String key) {
+      this.key = key;
+    }
+
+    /**
+     * @return the name used to expose the outcome
+     */
+    public String key() {
+      return key;
+    }
+
+    /**
+     * @param result the outcome of a delivery
+     * @return the outcome of the given delivery
+     */
+    public static Outcome of(RecipientResult result) {
+      if (result.getResponse() != null) {
+        return result.getResponse().getOutcome();
+      }
+      return result.isThrottled() ? RATE_LIMITED : FAILED;
+    }
+
+  }
+
+  /**
+   * A lock free histogram of durations with fixed buckets.
+   */
+  public static class Timer {
+
+    private static final long[] BOUNDS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+    private volatile LongConsumer listener = nanos -> {
+    };
+
+    /**
+     * Passes every duration recorded from now on to the given listener as well (the timer of a metrics library, for
+     * instance).
+     *
+     * @param listener the listener of the durations (in nanoseconds)
+     */
+    public synchronized void listen(LongConsumer listener) {
+      this.listener = this.listener.andThen(listener);
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void update(long nanos) {
+      long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+      int bucket = 0;
+      while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+        bucket++;
+      }
+      buckets.incrementAndGet(bucket);
+      count.increment();
+      total.add(nanos);
+      max.accumulateAndGet(nanos, Math::max);
+      listener.accept(nanos);
+    }
+
+    /**
+     * @return how many durations were recorded
+     */
+    public long getCount() {
+      return count.sum();
+    }
+
+    /**
+     * @return the mean duration (in milliseconds)
+     */
+    public double getMean() {
+      long count = getCount();
+      return count == 0 ? 0 : total.sum() / 1e6 / count;
+    }
+
+    /**
+     * @return the longest duration (in milliseconds)
+     */
+    public double getMax() {
+      return max.get() / 1e6;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile, limited by the resolution of the buckets.
+     *
+     * @param percentile the percentile (between 0 and 1)
+     * @return the upper bound of the given percentile (in milliseconds)
+     */
+    public double getPercentile(double percentile) {
+      long count = getCount();
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(percentile * count);
+      long seen = 0;
+      for (int i = 0; i < BOUNDS.length; i++) {
+        seen += buckets.get(i);
+        if (seen >= rank) {
+          return Math.min(BOUNDS[i], getMax());
+        }
+      }
+      return getMax();
+    }
+
+    /**
+     * @return the summary of the durations as a json object
+     */
+    public JSONObject toJson() {
+      return new JSONObject()
+          .element("count", getCount())
+          .element("mean", getMean())
+          .element("p50", getPercentile(0.5))
+          .element("p95", getPercentile(0.95))
+          .element("p99", getPercentile(0.99))
+          .element("max", getMax());
+    }
+
+  }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.model.Run;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.RunAction2;
+import tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * An action that records the deliveries of the notifications about a build: how each notification service handled
+ * each attempt and the time spent delivering it to each recipient. Only the latest attempts are kept, so the record
+ * stays small in the build file.
+ *
+ * @author Ataxexe
+ */
+public class DeliveryRecord implements RunAction2 {
+
+  private static final Logger LOGGER = Logger.getLogger(DeliveryRecord.class.getName());
+
+  /**
+   * The number of attempts kept by each build
+   */
+  public static final int MAX_ATTEMPTS = 20;
+
+  // guards the creation of the records, without taking the monitor of the builds (which is used by Jenkins itself)
+  private static final Object LOCK = new Object();
+
+  private final List<Attempt> attempts = new ArrayList<>();
+  private transient Run<?, ?> build;
+
+  /**
+   * Records the outcome of an attempt to deliver the given message in the build it came from. Messages that don't
+   * come from a build (or from a build that no longer exists) are not recorded.
+   * <p>
+   * The build is only written when the delivery is over, so a message retried many times doesn't rewrite the build
+   * file on every attempt. The attempts before it are written along with the last one.
+   *
+   * @param message the delivered message
+   * @param result  the outcome of the attempt
+   * @param last    {@code true} if the message will not be tried again
+   * @see Payload#getOrigin()
+   */
+  public static void record(Message message, DeliveryResult result, boolean last) {
+    String origin = message.getPayload().getOrigin();
+    if (origin == null) {
+      return;
+    }
+    Run<?, ?> build;
+    // deliveries run in the background, without the permissions of whoever triggered the build
+    try (ACLContext ignored = ACL.as(ACL.SYSTEM)) {
+      build = Run.fromExternalizableId(origin);
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.FINE, "Build " + origin + " not found", e);
+      return;
+    }
+    if (build == null) {
+      return;
+    }
+    Attempt attempt = new Attempt(message.getProvider(), System.currentTimeMillis(), result);
+    DeliveryRecord record;
+    synchronized (LOCK) {
+      record = build.getAction(DeliveryRecord.class);
+      if (record == null) {
+        record = new DeliveryRecord();
+        build.addAction(record);
+      }
+    }
+    record.add(attempt);
+    if (!last) {
+      return;
+    }
+    // the record is synchronized on its own, so the build is written without holding any lock
+    try {
+      build.save();
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Error while recording the delivery in " + origin, e);
+    }
+  }
+
+  synchronized void add(Attempt attempt) {
+    attempts.add(attempt);
+    if (attempts.size() > MAX_ATTEMPTS) {
+      attempts.remove(0);
+    }
+  }
+
+  /**
+   * @return the recorded attempts, from the oldest to the newest
+   */
+  public synchronized List<Attempt> getAttempts() {
+    return new ArrayList<>(attempts);
+  }
+
+  /**
+   * @return the build that holds this record
+   */
+  public Run<?, ?> getBuild() {
+    return build;
+  }
+
+  @Override
+  public void onAttached(Run<?, ?> build) {
+    this.build = build;
+  }
+
+  @Override
+  public void onLoad(Run<?, ?> build) {
+    this.build = build;
+  }
+
+  @Override
+  public String getIconFileName() {
+    return "notepad.png";
+  }
+
+  @Override
+  public String getDisplayName() {
+    return "Notification Deliveries";
+  }
+
+  @Override
+  public String getUrlName() {
+    return "notification-deliveries";
+  }
+
+  /**
+   * A class that holds an attempt to deliver a notification
+   */
+  public static final class Attempt {
+
+    private final String provider;
+    private final long timestamp;
+    private final List<Delivery> deliveries;
+
+    Attempt(String provider, long timestamp, DeliveryResult result) {
+      this.provider = provider;
+      this.timestamp = timestamp;
+      this.deliveries = result.getResults().stream()
+          .map(Delivery::new)
+          .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the name of the notification service
+     */
+    public String getProvider() {
+      return provider;
+    }
+
+    public Date getDate() {
+      return new Date(timestamp);
+    }
+
+    /**
+     * @return the outcome of each recipient
+     */
+    public List<Delivery> getDeliveries() {
+      return Collections.unmodifiableList(deliveries);
+    }
+
+  }
+
+  /**
+   * A class that holds the outcome of delivering a notification to a single recipient
+   */
+  public static final class Delivery {
+
+    private final String recipient;
+    private final Outcome outcome;
+    private final int status;
+    private final long elapsedTime;
+    private final String error;
+
+    Delivery(RecipientResult result) {
+      this.recipient = RecipientResult.mask(result.getRecipient());
+      this.outcome = DeliveryMetrics.Outcome.of(result);
+      this.status = result.getResponse() != null ? result.getResponse().getStatus() : 0;
+      this.elapsedTime = result.getElapsedTime();
+      this.error = result.getError();
+    }
+
+    /**
+     * @return the end of the recipient id
+     */
+    public String getRecipient() {
+      return recipient;
+    }
+
+    public Outcome getOutcome() {
+      return outcome;
+    }
+
+    /**
+     * @return the http status code or {@code 0} if the notification service could not be reached
+     */
+    public int getStatus() {
+      return status;
+    }
+
+    /**
+     * @return the time spent in the delivery (in milliseconds)
+     */
+    public long getElapsedTime() {
+      return elapsedTime;
+    }
+
+    /**
+     * @return the description of the error or {@code null} if there is none
+     */
+    public String getError() {
+      return error;
+    }
+
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A class that aggregates the outcome of delivering a message to each one of its recipients.
+ *
+ * @author Ataxexe
+ */
+public class DeliveryResult {
+
+  private final List<RecipientResult> results;
+
+  /**
+   * Creates a new result based on the given recipient results
+   *
+   * @param results the outcome of each recipient
+   */
+  public DeliveryResult(List<RecipientResult> results) {
+    this.results = Collections.unmodifiableList(new ArrayList<>(results));
+  }
+
+  /**
+   * @return the outcome of each recipient
+   */
+  public List<RecipientResult> getResults() {
+    return results;
+  }
+
+  /**
+   * @return {@code true} if every recipient received the message
+   */
+  public boolean isSuccessful() {
+    return results.stream().allMatch(RecipientResult::isSuccessful);
+  }
+
+  /**
+   * @return the results of the recipients that didn't receive the message
+   */
+  public List<RecipientResult> getFailures() {
+    return results.stream()
+        .filter(result -> !result.isSuccessful())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * @return {@code true} if every failed recipient was held back by the {@link RateLimiter}, which means the message
+   * didn't reach any notification service that refused it
+   */
+  public boolean isThrottled() {
+    List<RecipientResult> failures = getFailures();
+    return !failures.isEmpty() && failures.stream().allMatch(RecipientResult::isThrottled);
+  }
+
+  /**
+   * @return the longest time (in milliseconds) a failed recipient must wait before being tried again or {@code -1}
+   * if none of them asked for a delay
+   * @see RecipientResult#getRetryAfter()
+   */
+  public long getRetryAfter() {
+    return results.stream()
+        .filter(result -> !result.isSuccessful())
+        .mapToLong(RecipientResult::getRetryAfter)
+        .max()
+        .orElse(-1);
+  }
+
+  @Override
+  public String toString() {
+    return results.toString();
+  }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Delivers a message to many recipients concurrently. Each notification service has its own limit of concurrent
+ * deliveries, shared by all of its messages.
+ * <p>
+ * Deliveries can also be started {@link #sendAsync(Collection, Delivery) asynchronously}. The http client is
+ * blocking, so each delivery still takes a thread while it waits for the service, but the caller is free to compose
+ * the outcome with other work, timeouts or fallbacks. Asynchronous tasks run in a pool of their own, with a bounded
+ * number of threads and a bounded queue, and are rejected once both are full.
+ *
+ * @author Ataxexe
+ */
+public class FanOut {
+
+  /**
+   * The default number of concurrent deliveries for a notification service
+   */
+  public static final int DEFAULT_CONCURRENCY = 4;
+
+  /**
+   * The number of threads that run asynchronous tasks
+   */
+  public static final int ASYNC_THREADS = 8;
+
+  /**
+   * The number of asynchronous tasks that can wait for a thread
+   */
+  public static final int ASYNC_QUEUE_CAPACITY = 64;
+
+  private static final Logger LOGGER = Logger.getLogger(FanOut.class.getName());
+
+  private static final Map<String, FanOut> PROVIDERS = new ConcurrentHashMap<>();
+
+  // the threads of this pool are bounded by the permits of each notification service
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory("fan-out"));
+
+  // asynchronous tasks wait for their recipients, so they can't share the threads used by them
+  private static final ThreadPoolExecutor ASYNC_EXECUTOR = new ThreadPoolExecutor(
+      ASYNC_THREADS, ASYNC_THREADS, 60, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(ASYNC_QUEUE_CAPACITY), new ThreadFactory("async"));
+
+  static {
+    ASYNC_EXECUTOR.allowCoreThreadTimeOut(true);
+  }
+
+  private final String provider;
+  private final DeliveryMetrics metrics;
+  private volatile Semaphore permits;
+  private int concurrency;
+
+  private FanOut(String provider, DeliveryMetrics metrics, int concurrency) {
+    this.provider = provider;
+    this.metrics = metrics;
+    this.concurrency = concurrency;
+    this.permits = new Semaphore(concurrency);
+  }
+
+  /**
+   * Returns the fan out shared by all messages of the given notification service.
+   *
+   * @param provider the name of the notification service
+   * @return the fan out for the given notification service
+   */
+  public static FanOut of(String provider) {
+    return PROVIDERS.computeIfAbsent(provider, name -> new FanOut(name, DeliveryMetrics.of(name), DEFAULT_CONCURRENCY));
+  }
+
+  /**
+   * Changes the number of concurrent deliveries. Deliveries already running are not affected.
+   *
+   * @param concurrency the number of concurrent deliveries
+   */
+  public synchronized void setConcurrency(int concurrency) {
+    if (concurrency != this.concurrency) {
+      this.concurrency = concurrency;
+      this.permits = new Semaphore(concurrency);
+    }
+  }
+
+  /**
+   * Delivers a message to each one of the given recipients and waits for all of them. A failing recipient doesn't
+   * affect the others.
+   *
+   * @param recipients the recipients of the message
+   * @param delivery   the function that delivers the message to a single recipient
+   * @return the outcome of each recipient
+   */
+  public DeliveryResult send(Collection<String> recipients, Delivery delivery) {
+    DeliveryResult result = sendAll(recipients, delivery);
+    for (RecipientResult failure : result.getFailures()) {
+      LOGGER.severe(String.format("Error while sending %s notification: %s", provider, failure));
+    }
+    return result;
+  }
+
+  /**
+   * Delivers a message to each one of the given recipients without blocking the caller. The deadline of the caller
+   * (if any) still applies to the delivery.
+   *
+   * @param recipients the recipients of the message
+   * @param delivery   the function that delivers the message to a single recipient
+   * @return the outcome of each recipient
+   * @see #send(Collection, Delivery)
+   */
+  public CompletableFuture<DeliveryResult> sendAsync(Collection<String> recipients, Delivery delivery) {
+    return async(() -> send(recipients, delivery));
+  }
+
+  /**
+   * Runs the given task in the threads used for asynchronous deliveries, keeping the deadline of the caller.
+   *
+   * @param task the task to run
+   * @return the result of the task (completed with a {@link RejectedExecutionException} if too many tasks are
+   * waiting for a thread)
+   */
+  public static <T> CompletableFuture<T> async(Supplier<T> task) {
+    Deadline deadline = Deadline.current();
+    try {
+      return CompletableFuture.supplyAsync(() -> Deadline.within(deadline, task), ASYNC_EXECUTOR);
+    } catch (RejectedExecutionException e) {
+      CompletableFuture<T> rejected = new CompletableFuture<>();
+      rejected.completeExceptionally(e);
+      return rejected;
+    }
+  }
+
+  private DeliveryResult sendAll(Collection<String> recipients, Delivery delivery) {
+    List<RecipientResult> results = new ArrayList<>(recipients.size());
+    Semaphore permits = this.permits;
+    Deadline deadline = Deadline.current();
+    if (recipients.size() == 1) {
+      // a single recipient is delivered by the caller, but still counts against the limit
+      results.add(deliverAlone(recipients.iterator().next(), delivery, permits, deadline));
+      return new DeliveryResult(results);
+    }
+    List<Future<RecipientResult>> futures = new ArrayList<>(recipients.size());
+    String skipped = null;
+    try {
+      for (String recipient : recipients) {
+        if (!acquire(permits, deadline)) {
+          skipped = "Deadline exceeded";
+          break;
+        }
+        try {
+          futures.add(EXECUTOR.submit(() -> {
+            try {
+              return Deadline.within(deadline, () -> deliver(recipient, delivery));
+            } finally {
+              permits.release();
+            }
+          }));
+        } catch (RuntimeException e) {
+          permits.release();
+          throw e;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      skipped = "Interrupted";
+    }
+    int index = 0;
+    for (String recipient : recipients) {
+      results.add(index < futures.size() ? await(recipient, futures.get(index)) :
+          RecipientResult.failed(recipient, skipped, 0));
+      index++;
+    }
+    return new DeliveryResult(results);
+  }
+
+  private RecipientResult deliverAlone(String recipient, Delivery delivery, Semaphore permits, Deadline deadline) {
+    try {
+      if (!acquire(permits, deadline)) {
+        return RecipientResult.failed(recipient, "Deadline exceeded", 0);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return RecipientResult.failed(recipient, "Interrupted", 0);
+    }
+    try {
+      return deliver(recipient, delivery);
+    } finally {
+      permits.release();
+    }
+  }
+
+  private static boolean acquire(Semaphore permits, Deadline deadline) throws InterruptedException {
+    if (deadline == null) {
+      permits.acquire();
+      return true;
+    }
+    return permits.tryAcquire(deadline.remaining(), TimeUnit.MILLISECONDS);
+  }
+
+  private static RecipientResult await(String recipient, Future<RecipientResult> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+      return RecipientResult.failed(recipient, "Interrupted", 0);
+    } catch (ExecutionException e) {
+      return RecipientResult.failed(recipient, String.valueOf(e.getCause()), 0);
+    }
+  }
+
+  private RecipientResult deliver(String recipient, Delivery delivery) {
+    metrics.started();
+    RecipientResult result = null;
+    long start = System.currentTimeMillis();
+    try {
+      ProviderResponse response = delivery.deliver(recipient);
+      result = RecipientResult.of(recipient, response, System.currentTimeMillis() - start);
+    } catch (RateLimiter.ThrottledException e) {
+      result = RecipientResult.throttled(recipient, e, System.currentTimeMillis() - start);
+    } catch (CircuitBreaker.OpenException e) {
+      result = CircuitBreaker.getPolicy() == CircuitBreaker.Policy.DROP ?
+          RecipientResult.dropped(recipient, e.getMessage(), System.currentTimeMillis() - start) :
+          RecipientResult.failed(recipient, e.getMessage(), System.currentTimeMillis() - start);
+    } catch (IOException | RuntimeException e) {
+      result = RecipientResult.failed(recipient, String.valueOf(e.getMessage()), System.currentTimeMillis() - start);
+    } finally {
+      metrics.finished(result != null ? result : RecipientResult.failed(recipient, "Interrupted", 0));
+    }
+    return result;
+  }
+
+  /**
+   * Interface that defines the delivery of a message to a single recipient.
+   */
+  public interface Delivery {
+
+    /**
+     * Delivers the message to the given recipient
+     *
+     * @param recipient the recipient of the message
+     * @return the response of the notification service
+     * @throws IOException if an I/O error occurs
+     */
+    ProviderResponse deliver(String recipient) throws IOException;
+
+  }
+
+  private static class ThreadFactory implements java.util.concurrent.ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger count = new AtomicInteger();
+
+    private ThreadFactory(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "build-notifications-" + name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  }
+
+}
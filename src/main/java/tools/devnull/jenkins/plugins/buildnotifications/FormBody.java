@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A url encoded form whose fields are shared by all recipients of a message. The shared fields are encoded once and
+ * the request to each recipient only appends the field that identifies it, instead of encoding the whole message
+ * again.
+ *
+ * @author Ataxexe
+ */
+public final class FormBody {
+
+  /**
+   * The content type of the requests
+   */
+  public static final String CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
+
+  private final byte[] shared;
+
+  private FormBody(byte[] shared) {
+    this.shared = shared;
+  }
+
+  /**
+   * Encodes the given fields. Fields without a value are sent empty.
+   *
+   * @param fields the names and values of the fields, in pairs
+   * @return the encoded form
+   */
+  public static FormBody of(String... fields) {
+    if (fields.length % 2 != 0) {
+      throw new IllegalArgumentException("Each field must have a name and a value");
+    }
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < fields.length; i += 2) {
+      if (i > 0) {
+        body.append('&');
+      }
+      body.append(field(fields[i], fields[i + 1]));
+    }
+    return new FormBody(body.toString().getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Creates the request entity of a single recipient.
+   *
+   * @param name  the name of the field that identifies the recipient
+   * @param value the value of the field
+   * @return the request entity with the shared fields and the given one
+   */
+  public RequestEntity with(String name, String value) {
+    return new ByteArrayRequestEntity(bytes(name, value), CONTENT_TYPE);
+  }
+
+  byte[] bytes(String name, String value) {
+    String field = shared.length > 0 ? "&" + field(name, value) : field(name, value);
+    byte[] suffix = field.getBytes(StandardCharsets.US_ASCII);
+    byte[] bytes = new byte[shared.length + suffix.length];
+    System.arraycopy(shared, 0, bytes, 0, shared.length);
+    System.arraycopy(suffix, 0, bytes, shared.length, suffix.length);
+    return bytes;
+  }
+
+  private static String field(String name, String value) {
+    return value != null ? encode(name) + "=" + encode(value) : encode(name) + "=";
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      // UTF-8 is always supported
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
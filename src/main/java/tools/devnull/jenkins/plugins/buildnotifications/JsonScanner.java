@@ -0,0 +1,240 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A streaming reader of json documents. The document is read only once and each scalar value is reported to a
+ * {@link Visitor} as soon as it's found, so no tree is built and the reading stops as soon as the visitor has
+ * what it needs. Malformed or truncated documents are read up to the point where they break.
+ * <p>
+ * Values are identified by the path of keys that leads to them, separated by dots (elements of arrays share the
+ * path of the array).
+ *
+ * @author Ataxexe
+ */
+final class JsonScanner {
+
+  private final String json;
+  private final Visitor visitor;
+  private final List<String> path = new ArrayList<>();
+  private int position;
+  private boolean stopped;
+
+  private JsonScanner(String json, Visitor visitor) {
+    this.json = json;
+    this.visitor = visitor;
+  }
+
+  /**
+   * Reads the given document, reporting its values to the given visitor
+   *
+   * @param json    the json document (may be {@code null})
+   * @param visitor the visitor of the values
+   */
+  static void scan(String json, Visitor visitor) {
+    if (json == null) {
+      return;
+    }
+    JsonScanner scanner = new JsonScanner(json, visitor);
+    try {
+      scanner.value();
+    } catch (MalformedException e) {
+      // nothing else can be read
+    }
+  }
+
+  private void value() {
+    switch (next()) {
+      case '{':
+        object();
+        break;
+      case '[':
+        array();
+        break;
+      case '"':
+        report(string());
+        break;
+      default:
+        String literal = literal();
+        report("null".equals(literal) ? null : literal);
+    }
+  }
+
+  private void object() {
+    position++;
+    if (next() == '}') {
+      position++;
+      return;
+    }
+    while (!stopped) {
+      expect('"');
+      path.add(string());
+      expect(':');
+      value();
+      path.remove(path.size() - 1);
+      if (next() == '}') {
+        position++;
+        return;
+      }
+      expect(',');
+    }
+  }
+
+  private void array() {
+    position++;
+    if (next() == ']') {
+      position++;
+      return;
+    }
+    while (!stopped) {
+      value();
+      if (next() == ']') {
+        position++;
+        return;
+      }
+      expect(',');
+    }
+  }
+
+  private String string() {
+    position++;
+    StringBuilder value = new StringBuilder();
+    while (true) {
+      char c = charAt(position++);
+      if (c == '"') {
+        return value.toString();
+      }
+      if (c != '\\') {
+        value.append(c);
+        continue;
+      }
+      c = charAt(position++);
+      switch (c) {
+        case 'n':
+          value.append('\n');
+          break;
+        case 't':
+          value.append('\t');
+          break;
+        case 'r':
+          value.append('\r');
+          break;
+        case 'b':
+          value.append('\b');
+          break;
+        case 'f':
+          value.append('\f');
+          break;
+        case 'u':
+          if (position + 4 > json.length()) {
+            throw new MalformedException();
+          }
+          try {
+            value.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+          } catch (NumberFormatException e) {
+            throw new MalformedException();
+          }
+          position += 4;
+          break;
+        default:
+          value.append(c);
+      }
+    }
+  }
+
+  private String literal() {
+    int start = position;
+    while (position < json.length() && ",}] \t\r\n".indexOf(json.charAt(position)) < 0) {
+      position++;
+    }
+    if (start == position) {
+      throw new MalformedException();
+    }
+    return json.substring(start, position);
+  }
+
+  private void report(String value) {
+    if (!stopped && !visitor.visit(String.join(".", path), value)) {
+      stopped = true;
+    }
+  }
+
+  private char next() {
+    while (Character.isWhitespace(charAt(position))) {
+      position++;
+    }
+    return json.charAt(position);
+  }
+
+  private void expect(char c) {
+    if (stopped) {
+      return;
+    }
+    if (next() != c) {
+      throw new MalformedException();
+    }
+    if (c != '"') {
+      position++;
+    }
+  }
+
+  private char charAt(int index) {
+    if (index >= json.length()) {
+      throw new MalformedException();
+    }
+    return json.charAt(index);
+  }
+
+  /**
+   * Interface that defines a visitor of the values of a json document
+   */
+  interface Visitor {
+
+    /**
+     * Visits a scalar value. Numbers and booleans are given as they are written in the document.
+     *
+     * @param path  the path of the value
+     * @param value the value or {@code null} if it's a json null
+     * @return {@code true} to keep reading the document or {@code false} to stop
+     */
+    boolean visit(String path, String value);
+
+  }
+
+  private static class MalformedException extends RuntimeException {
+
+    private MalformedException() {
+      super(null, null, false, false);
+    }
+
+  }
+
+}
@@ -27,53 +27,95 @@
 
 package tools.devnull.jenkins.plugins.buildnotifications;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
- * Interface that defines a message that can be sent.
+ * Interface that defines a message that can be sent. Messages are immutable: the content is held by a
+ * {@link Payload} and the message only encodes it for its notification service and transports it.
  *
  * @author Ataxexe
  */
 public interface Message {
 
   /**
-   * Sets the content of this message
+   * Returns the content of this message
    *
-   * @param content the content to set
+   * @return the content of this message
    */
-  void setContent(String content);
+  Payload getPayload();
 
   /**
-   * Sets the title for this message
+   * Returns a message to the same recipients, through the same service, with the given content
    *
-   * @param title the title to set
+   * @param payload the content of the message
+   * @return the new message
    */
-  void setTitle(String title);
+  Message withPayload(Payload payload);
 
   /**
-   * Sets the url for this message
+   * Returns the name of the notification service that transports this message
    *
-   * @param url   the url to set
-   * @param title the title of the url
+   * @return the name of the notification service
    */
-  void setUrl(String url, String title);
+  default String getProvider() {
+    return getClass().getSimpleName();
+  }
 
   /**
-   * Indicates that this is a high priority message
+   * Returns how this message is delivered: the notification service, the credentials, the recipients and anything
+   * else that is not part of the payload. Messages with the same route differ only by their payload.
+   *
+   * @return the route of this message
    */
-  void highPriority();
+  default String getRoute() {
+    return getClass().getName() + ":" + getRecipients();
+  }
 
   /**
-   * Indicates that this is a low priority message
+   * Returns the recipients of this message
+   *
+   * @return the recipients of this message
    */
-  void lowPriority();
+  List<String> getRecipients();
 
   /**
-   * Indicates that this is a normal priority message
+   * Sends the message to the given recipients (a subset of {@link #getRecipients()})
+   *
+   * @param recipients the recipients that should receive the message
+   * @return the outcome of each recipient
    */
-  void normalPriority();
+  DeliveryResult send(Collection<String> recipients);
 
   /**
-   * Sends the message
+   * Sends the message to each one of its recipients
+   *
+   * @return the outcome of each recipient
+   */
+  default DeliveryResult send() {
+    return send(getRecipients());
+  }
+
+  /**
+   * Sends the message to the given recipients without blocking the caller. Failures of each recipient are part of
+   * the result, the returned future only completes exceptionally if the delivery itself breaks.
+   *
+   * @param recipients the recipients that should receive the message
+   * @return the outcome of each recipient
+   */
+  default CompletableFuture<DeliveryResult> sendAsync(Collection<String> recipients) {
+    return FanOut.async(() -> send(recipients));
+  }
+
+  /**
+   * Sends the message to each one of its recipients without blocking the caller
+   *
+   * @return the outcome of each recipient
+   * @see #sendAsync(Collection)
    */
-  void send();
+  default CompletableFuture<DeliveryResult> sendAsync() {
+    return sendAsync(getRecipients());
+  }
 
 }
@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled message template. The template is parsed once into a list of literal and placeholder segments, so
+ * rendering a message is just a matter of appending them to a buffer.
+ * <p>
+ * Placeholders use the {@code ${name}} syntax, where {@code name} is one of the {@link Placeholder} names.
+ * Anything else is kept as is.
+ *
+ * @author Ataxexe
+ */
+public final class MessageTemplate {
+
+  /**
+   * The layout used when no template is configured
+   */
+  public static final String DEFAULT = "${title}\n\n${content}\n\n${urlTitle} <${url}>\n\n${extraMessage}";
+
+  private static final Map<String, MessageTemplate> CACHE = new ConcurrentHashMap<>();
+
+  private final String source;
+  private final List<Object> segments;
+  private final int literalLength;
+
+  private MessageTemplate(String source, List<Object> segments) {
+    this.source = source;
+    this.segments = Collections.unmodifiableList(segments);
+    int length = 0;
+    for (Object segment : segments) {
+      if (segment instanceof String) {
+        length += ((String) segment).length();
+      }
+    }
+    this.literalLength = length;
+  }
+
+  /**
+   * Returns the compiled form of the given template, compiling it only if it was not used before.
+   *
+   * @param template the template to compile ({@code null} or empty for the {@link #DEFAULT default} one)
+   * @return the compiled template
+   */
+  public static MessageTemplate of(String template) {
+    String source = template == null || template.trim().isEmpty() ? DEFAULT : template;
+    return CACHE.computeIfAbsent(source, MessageTemplate::compile);
+  }
+
+  /**
+   * Returns the first template that is configured.
+   *
+   * @param templates the templates in order of precedence
+   * @return the compiled template
+   */
+  public static MessageTemplate firstOf(String... templates) {
+    for (String template : templates) {
+      if (template != null && !template.trim().isEmpty()) {
+        return of(template);
+      }
+    }
+    return of(DEFAULT);
+  }
+
+  private static MessageTemplate compile(String template) {
+    List<Object> segments = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+    int index = 0;
+    while (index < template.length()) {
+      int start = template.indexOf("${", index);
+      int end = start < 0 ? -1 : template.indexOf('}', start);
+      if (end < 0) {
+        literal.append(template, index, template.length());
+        break;
+      }
+      Placeholder placeholder = Placeholder.named(template.substring(start + 2, end));
+      if (placeholder == null) {
+        literal.append(template, index, end + 1);
+      } else {
+        literal.append(template, index, start);
+        if (literal.length() > 0) {
+          segments.add(literal.toString());
+          literal.setLength(0);
+        }
+        segments.add(placeholder);
+      }
+      index = end + 1;
+    }
+    if (literal.length() > 0) {
+      segments.add(literal.toString());
+    }
+    return new MessageTemplate(template, segments);
+  }
+
+  /**
+   * @return the template this one was compiled from
+   */
+  public String getSource() {
+    return source;
+  }
+
+  /**
+   * Renders this template using the given values. Missing values are rendered as empty strings.
+   *
+   * @param values the value of each placeholder
+   * @return the rendered message
+   */
+  public String render(Map<Placeholder, String> values) {
+    int length = literalLength;
+    for (Object segment : segments) {
+      if (segment instanceof Placeholder) {
+        String value = values.get(segment);
+        length += value != null ? value.length() : 0;
+      }
+    }
+    StringBuilder result = new StringBuilder(length);
+    for (Object segment : segments) {
+      if (segment instanceof Placeholder) {
+        String value = values.get(segment);
+        if (value != null) {
+          result.append(value);
+        }
+      } else {
+        result.append((String) segment);
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * The values that can be used in a template.
+   */
+  public enum Placeholder {
+
+    TITLE("title"),
+    CONTENT("content"),
+    URL("url"),
+    URL_TITLE("urlTitle"),
+    STATUS("status"),
+    JOB("job"),
+    NUMBER("number"),
+    CHANGES("changes"),
+    EXTRA_MESSAGE("extraMessage");
+
+    private final String name;
+
+    Placeholder(String name) {
+      this.name = name;
+    }
+
+    private static Placeholder named(String name) {
+      for (Placeholder placeholder : values()) {
+        if (placeholder.name.equals(name)) {
+          return placeholder;
+        }
+      }
+      return null;
+    }
+
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.scm.ChangeLogSet;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The content of a notification about a build, independent of the notification service. It's computed once per
+ * build and shared by every notifier of the job, each one populating its own {@link Message} from it.
+ *
+ * @author Ataxexe
+ */
+public final class Notification {
+
+  private static final Map<Run<?, ?>, Notification> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+  private final BuildStatus status;
+  private final Result result;
+  private final String job;
+  private final int number;
+  private final String title;
+  private final String content;
+  private final String changes;
+  private final String path;
+  private final String buildId;
+
+  Notification(Run<?, ?> build) {
+    this.status = BuildStatus.of(build);
+    this.result = BuildStatus.resultOf(build);
+    this.job = build.getParent().getName();
+    this.number = build.getNumber();
+    this.title = String.format("%s - Build #%d of %s", status.tag(), number, job);
+    this.changes = NotifierSettings.changelog().render(changesOf(build));
+    this.content = changes.isEmpty() ? resultLabel() : String.format("%s%n%n%s", resultLabel(), changes);
+    this.path = build.getUrl();
+    this.buildId = build.getExternalizableId();
+  }
+
+  /**
+   * Returns the notification about the given build. It's computed only once for each build (unless the result of
+   * the build changes) and the build must have a result.
+   *
+   * @param build the build
+   * @return the notification about the given build
+   */
+  public static Notification of(Run<?, ?> build) {
+    Notification notification = cache.get(build);
+    if (notification == null || notification.result != BuildStatus.resultOf(build)) {
+      notification = new Notification(build);
+      cache.put(build, notification);
+    }
+    return notification;
+  }
+
+  private static Iterator<? extends ChangeLogSet.Entry> changesOf(Run<?, ?> build) {
+    // only freestyle builds expose their changes in this version of Jenkins
+    if (build instanceof AbstractBuild) {
+      return ((AbstractBuild<?, ?>) build).getChangeSet().iterator();
+    }
+    return Collections.emptyIterator();
+  }
+
+  private String resultLabel() {
+    String label = NotifierSettings.labels().of(result);
+    return label != null ? label : result.toString();
+  }
+
+  public BuildStatus getStatus() {
+    return status;
+  }
+
+  public Result getResult() {
+    return result;
+  }
+
+  /**
+   * @return the name of the job
+   */
+  public String getJob() {
+    return job;
+  }
+
+  /**
+   * @return the number of the build
+   */
+  public int getNumber() {
+    return number;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  /**
+   * @return the result of the build followed by its changes
+   */
+  public String getContent() {
+    return content;
+  }
+
+  /**
+   * @return the changes included in the build (empty if there is none)
+   */
+  public String getChanges() {
+    return changes;
+  }
+
+  /**
+   * @return the path of the build, relative to the Jenkins root url
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return the id that locates the build across restarts
+   * @see Run#fromExternalizableId(String)
+   */
+  public String getBuildId() {
+    return buildId;
+  }
+
+}
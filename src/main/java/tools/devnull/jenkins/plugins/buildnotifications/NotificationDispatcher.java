@@ -0,0 +1,600 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.init.Terminator;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A plugin-wide dispatcher that delivers messages using a bounded pool of worker threads, so the build executor
+ * doesn't need to wait for the notification services.
+ * <p>
+ * Messages are stored in the {@link Outbox} before being delivered and failed deliveries are retried with an
+ * exponential backoff. Each delivery has a {@link Deadline deadline} that covers all of its recipients.
+ * <p>
+ * Messages can be part of a sequence (the notifications of a job to the same targets, for instance). Messages of a
+ * sequence are delivered one at a time, in the order they were dispatched, while different sequences are delivered
+ * concurrently. A message that fails holds its sequence until it's retried, so the messages after it are never
+ * delivered first; the sequence is kept in the outbox and restored when the messages are replayed.
+ * <p>
+ * Waiting messages are delivered by {@link Payload.Priority priority}, so broken and fixed builds are notified
+ * before successful ones. Messages waiting behind the previous message of their sequence are waiting as well, so
+ * they count against the capacity of the queue. When the queue is full, a message takes the place of the newest
+ * waiting message with a lower priority, which is discarded (shed). Shed messages are counted by priority.
+ *
+ * @author Ataxexe
+ */
+public class NotificationDispatcher {
+
+  private static final Logger LOGGER = Logger.getLogger(NotificationDispatcher.class.getName());
+
+  /**
+   * The default number of threads used to deliver messages
+   */
+  public static final int DEFAULT_POOL_SIZE = 2;
+  /**
+   * The default number of messages that can wait for delivery
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 500;
+  /**
+   * The default time to deliver a message to all of its recipients (in seconds)
+   */
+  public static final int DEFAULT_DELIVERY_TIMEOUT = 120;
+  /**
+   * The default time to finish pending deliveries when Jenkins is shutting down (in seconds)
+   */
+  public static final int DEFAULT_SHUTDOWN_TIMEOUT = 10;
+
+  private static final long INITIAL_BACKOFF = TimeUnit.SECONDS.toMillis(5);
+  private static final long MAX_BACKOFF = TimeUnit.HOURS.toMillis(1);
+
+  private static final NotificationDispatcher INSTANCE =
+      new NotificationDispatcher(DEFAULT_POOL_SIZE, DEFAULT_QUEUE_CAPACITY);
+
+  private final Outbox outbox;
+  private final ScheduledExecutorService scheduler;
+  private final Set<Deadline> deliveries = ConcurrentHashMap.newKeySet();
+  // the tasks parked behind the running task of each sequence, guarded by queueLock
+  private final Map<String, Queue<Task>> sequences = new HashMap<>();
+  private final Map<Outbox.Entry, CompletableFuture<DeliveryResult>> waiting = new ConcurrentHashMap<>();
+  private final Map<Payload.Priority, LongAdder> shed = new EnumMap<>(Payload.Priority.class);
+  private final AtomicLong order = new AtomicLong();
+  private final Object queueLock = new Object();
+  private int parked;
+  private final ThreadPoolExecutor executor;
+  private volatile int deliveryTimeout = DEFAULT_DELIVERY_TIMEOUT;
+  private volatile int shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+  private volatile boolean stopping;
+  private volatile long initialBackoff = INITIAL_BACKOFF;
+  private volatile int queueCapacity;
+
+  /**
+   * Creates a new dispatcher based on the given parameters
+   *
+   * @param poolSize      the number of threads used to deliver messages
+   * @param queueCapacity the number of messages that can wait for delivery
+   */
+  public NotificationDispatcher(int poolSize, int queueCapacity) {
+    this(poolSize, queueCapacity, Outbox.get());
+  }
+
+  /**
+   * Creates a new dispatcher based on the given parameters
+   *
+   * @param poolSize      the number of threads used to deliver messages
+   * @param queueCapacity the number of messages that can wait for delivery
+   * @param outbox        the outbox that keeps the messages until they are delivered
+   */
+  public NotificationDispatcher(int poolSize, int queueCapacity, Outbox outbox) {
+    this.outbox = outbox;
+    this.scheduler = new ScheduledThreadPoolExecutor(1, new DispatcherThreadFactory("build-notifications-retry-"));
+    this.queueCapacity = queueCapacity;
+    this.executor = createExecutor(poolSize);
+    for (Payload.Priority priority : Payload.Priority.values()) {
+      shed.put(priority, new LongAdder());
+    }
+  }
+
+  /**
+   * Returns the dispatcher shared by all notifiers.
+   *
+   * @return the plugin-wide dispatcher
+   */
+  public static NotificationDispatcher get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Changes the pool size and the queue capacity of this dispatcher. The pool is resized in place, so the messages
+   * already queued keep their place and still count against the new capacity. A smaller capacity doesn't discard
+   * them, it only stops new messages from being queued until there is room again.
+   *
+   * @param poolSize      the number of threads used to deliver messages
+   * @param queueCapacity the number of messages that can wait for delivery
+   */
+  public synchronized void configure(int poolSize, int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+    // the maximum size can't be below the core size, so the order depends on the direction of the change
+    if (poolSize > executor.getMaximumPoolSize()) {
+      executor.setMaximumPoolSize(poolSize);
+      executor.setCorePoolSize(poolSize);
+    } else {
+      executor.setCorePoolSize(poolSize);
+      executor.setMaximumPoolSize(poolSize);
+    }
+  }
+
+  /**
+   * @return the number of threads used to deliver messages
+   */
+  public int getPoolSize() {
+    return executor.getCorePoolSize();
+  }
+
+  /**
+   * Changes the time limits of this dispatcher.
+   *
+   * @param deliveryTimeout the time to deliver a message to all of its recipients (in seconds)
+   * @param shutdownTimeout the time to finish pending deliveries when Jenkins is shutting down (in seconds)
+   */
+  public void setTimeouts(int deliveryTimeout, int shutdownTimeout) {
+    this.deliveryTimeout = deliveryTimeout;
+    this.shutdownTimeout = shutdownTimeout;
+  }
+
+  /**
+   * Enqueues the given message for delivery. This method never blocks: if the queue is full, the message is
+   * discarded.
+   *
+   * @param message the message to deliver
+   * @return {@code true} if the message was enqueued
+   */
+  public boolean dispatch(Message message) {
+    return dispatch(message, null);
+  }
+
+  /**
+   * Enqueues the given message for delivery after the messages of the same sequence dispatched before it. This
+   * method never blocks: if the queue is full, the message is discarded.
+   *
+   * @param message  the message to deliver
+   * @param sequence the sequence of the message ({@code null} if its order doesn't matter)
+   * @return {@code true} if the message was enqueued
+   */
+  public boolean dispatch(Message message, String sequence) {
+    return dispatch(outbox.add(message, sequence));
+  }
+
+  /**
+   * Enqueues the given message like {@link #dispatch(Message, String)} and returns the outcome of its first delivery
+   * attempt. Recipients that failed are still retried in background, the returned future only tells the caller how
+   * the first attempt went. This method never blocks: if the message can't be enqueued, the returned future is
+   * completed exceptionally.
+   *
+   * @param message  the message to deliver
+   * @param sequence the sequence of the message ({@code null} if its order doesn't matter)
+   * @return the outcome of the first delivery attempt
+   */
+  public CompletableFuture<DeliveryResult> dispatchAsync(Message message, String sequence) {
+    CompletableFuture<DeliveryResult> result = new CompletableFuture<>();
+    Outbox.Entry entry = outbox.add(message, sequence);
+    waiting.put(entry, result);
+    if (!dispatch(entry)) {
+      waiting.remove(entry);
+      result.completeExceptionally(new RejectedExecutionException(stopping ?
+          "Jenkins is shutting down, the notification will be sent after the restart" :
+          "Notification queue is full"));
+    }
+    return result;
+  }
+
+  /**
+   * Schedules a new delivery attempt for the given pending message, using an exponential backoff based on how many
+   * times it was attempted (or the delay asked by its last attempt, if longer). The message is enqueued after the
+   * messages of its sequence that are already waiting.
+   *
+   * @param entry the pending message
+   */
+  public void retry(Outbox.Entry entry) {
+    scheduler.schedule(() -> {
+      if (!submit(entry)) {
+        retry(entry);
+      }
+    }, backoff(entry), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Delivers a pending message again as soon as there is room in the queue (a message read from the outbox after a
+   * restart, for instance).
+   *
+   * @param entry the pending message
+   */
+  public void resume(Outbox.Entry entry) {
+    if (!submit(entry)) {
+      retry(entry);
+    }
+  }
+
+  /**
+   * Changes the delay before the first retry of a message. Later retries double it.
+   *
+   * @param initialBackoff the delay in milliseconds
+   */
+  void setInitialBackoff(long initialBackoff) {
+    this.initialBackoff = initialBackoff;
+  }
+
+  /**
+   * @return the number of messages waiting for delivery
+   */
+  public int getQueueSize() {
+    synchronized (queueLock) {
+      return executor.getQueue().size() + parked;
+    }
+  }
+
+  /**
+   * @param priority the priority of the messages
+   * @return the number of messages with the given priority that were discarded because the queue was full
+   */
+  public long getShedCount(Payload.Priority priority) {
+    return shed.get(priority).sum();
+  }
+
+  /**
+   * @return the number of messages being delivered right now
+   */
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * Stops this dispatcher. Deliveries in progress are given the configured time to finish and are then aborted.
+   * Messages that were not delivered remain in the outbox and are delivered after the restart.
+   */
+  public void shutdown() {
+    stopping = true;
+    scheduler.shutdownNow();
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(shutdownTimeout, TimeUnit.SECONDS)) {
+        LOGGER.warning(String.format("Aborting %d notifications still in progress", deliveries.size()));
+        for (Deadline deadline : deliveries) {
+          deadline.expire();
+        }
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    for (CompletableFuture<DeliveryResult> result : waiting.values()) {
+      result.completeExceptionally(new RejectedExecutionException("Jenkins is shutting down"));
+    }
+    waiting.clear();
+    try {
+      if (!outbox.flush(shutdownTimeout, TimeUnit.SECONDS)) {
+        LOGGER.warning("Pending notifications were not stored before shutdown");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Stops the plugin-wide dispatcher when Jenkins shuts down, after dispatching the digests still buffered by the
+   * {@link StormCoalescer}.
+   */
+  @Terminator
+  public static void terminate() {
+    // buffered digests are handed over while the dispatcher still accepts messages
+    StormCoalescer.get().flush();
+    get().shutdown();
+  }
+
+  private boolean dispatch(Outbox.Entry entry) {
+    if (!submit(entry)) {
+      if (stopping) {
+        LOGGER.info("Jenkins is shutting down, the notification will be sent after the restart");
+        return false;
+      }
+      LOGGER.warning("Notification queue is full, discarding notification");
+      shed.get(priorityOf(entry)).increment();
+      outbox.remove(entry);
+      return false;
+    }
+    return true;
+  }
+
+  private boolean submit(Outbox.Entry entry) {
+    String sequence = entry.getSequence();
+    Task task = new Task(entry, sequence, priorityOf(entry), order.incrementAndGet());
+    Task victim = null;
+    boolean parkedVictim = false;
+    synchronized (queueLock) {
+      if (executor.getQueue().size() + parked >= queueCapacity) {
+        victim = victimFor(task);
+        if (victim == null) {
+          return false;
+        }
+      }
+      Queue<Task> waiting = sequence != null ? sequences.get(sequence) : null;
+      if (waiting != null) {
+        // the sequence is being delivered, the task will be executed once the previous ones are done
+        waiting.add(task);
+        parked++;
+      } else {
+        try {
+          executor.execute(task);
+        } catch (RejectedExecutionException e) {
+          return false;
+        }
+        if (sequence != null) {
+          sequences.put(sequence, new ArrayDeque<>());
+        }
+      }
+      if (victim != null) {
+        Queue<Task> behind = victim.sequence != null ? sequences.get(victim.sequence) : null;
+        if (behind != null && behind.remove(victim)) {
+          parked--;
+          parkedVictim = true;
+        } else if (!executor.getQueue().remove(victim)) {
+          // a worker took the victim in the meantime, which made room for the task as well
+          victim = null;
+        }
+      }
+    }
+    if (victim != null) {
+      shed(victim, parkedVictim);
+    }
+    return true;
+  }
+
+  private void next(String sequence) {
+    synchronized (queueLock) {
+      Queue<Task> waiting = sequences.get(sequence);
+      Task task = waiting != null ? waiting.poll() : null;
+      if (task == null) {
+        sequences.remove(sequence);
+        return;
+      }
+      parked--;
+      try {
+        // the task was already counted against the capacity, so it doesn't need to check it again
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        // the dispatcher is stopping, the rest of the sequence is delivered from the outbox after the restart
+        parked -= waiting.size();
+        sequences.remove(sequence);
+      }
+    }
+  }
+
+  /**
+   * Finds the newest task with a lower priority than the given one, either waiting in the queue or parked behind
+   * the running task of its sequence.
+   */
+  private Task victimFor(Task task) {
+    Task victim = null;
+    for (Runnable queued : executor.getQueue()) {
+      victim = newestLower(task, (Task) queued, victim);
+    }
+    for (Queue<Task> waiting : sequences.values()) {
+      for (Task candidate : waiting) {
+        victim = newestLower(task, candidate, victim);
+      }
+    }
+    return victim;
+  }
+
+  private static Task newestLower(Task task, Task candidate, Task victim) {
+    if (candidate.priority.compareTo(task.priority) > 0 && (victim == null || candidate.compareTo(victim) > 0)) {
+      return candidate;
+    }
+    return victim;
+  }
+
+  private void shed(Task task, boolean parked) {
+    LOGGER.warning(String.format("Notification queue is full, discarding %s priority notification to %s",
+        task.priority.name().toLowerCase(), RecipientResult.mask(task.entry.getRecipients())));
+    shed.get(task.priority).increment();
+    outbox.remove(task.entry);
+    complete(task.entry, null, new RejectedExecutionException("Discarded in favor of a higher priority notification"));
+    if (task.sequence != null && !parked) {
+      // the task was the next one of its sequence, so the sequence moves on to the parked ones
+      next(task.sequence);
+    }
+  }
+
+  private static Payload.Priority priorityOf(Outbox.Entry entry) {
+    Payload payload = entry.getMessage().getPayload();
+    // messages stored by previous versions have no payload
+    return payload != null ? payload.getPriority() : Payload.Priority.NORMAL;
+  }
+
+  /**
+   * Delivers the message of the given task.
+   *
+   * @return {@code true} if the message will be tried again while holding its sequence
+   */
+  private boolean deliver(Task task) {
+    Outbox.Entry entry = task.entry;
+    Deadline deadline = Deadline.after(TimeUnit.SECONDS.toMillis(deliveryTimeout));
+    deliveries.add(deadline);
+    DeliveryResult result = null;
+    try {
+      result = Deadline.within(deadline, () -> entry.getMessage().send(entry.getRecipients()));
+      if (!result.isSuccessful()) {
+        LOGGER.warning("Notification not delivered: " + result.getFailures());
+      }
+      complete(entry, result, null);
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.SEVERE, "Error while sending notification", e);
+      complete(entry, null, e);
+    } finally {
+      deliveries.remove(deadline);
+      deadline.close();
+    }
+    boolean retry = outbox.attempted(entry, result) && !stopping;
+    if (result != null) {
+      DeliveryRecord.record(entry.getMessage(), result, !retry);
+    }
+    if (!retry) {
+      return false;
+    }
+    if (task.sequence == null) {
+      retry(entry);
+      return false;
+    }
+    // the next messages of the sequence wait for this one, so a fixed build is never notified before the broken one
+    hold(task);
+    return true;
+  }
+
+  private void hold(Task task) {
+    scheduler.schedule(() -> {
+      try {
+        // the task is still the head of its sequence, so it's not parked behind the messages it holds
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        // the dispatcher is stopping, the sequence is delivered from the outbox after the restart
+      }
+    }, backoff(task.entry), TimeUnit.MILLISECONDS);
+  }
+
+  private long backoff(Outbox.Entry entry) {
+    long backoff = Math.min(MAX_BACKOFF, initialBackoff << Math.min(entry.getAttempts(), 20));
+    long retryAfter = entry.getRetryAfter();
+    if (retryAfter > backoff) {
+      // no point in trying before the notification service (or its rate limit) allows it
+      return retryAfter;
+    }
+    // full jitter keeps retries of messages that failed together from hitting the service together
+    return ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+  }
+
+  private void complete(Outbox.Entry entry, DeliveryResult result, Throwable error) {
+    CompletableFuture<DeliveryResult> future = waiting.remove(entry);
+    if (future == null) {
+      return;
+    }
+    if (error != null) {
+      future.completeExceptionally(error);
+    } else {
+      future.complete(result);
+    }
+  }
+
+  private static ThreadPoolExecutor createExecutor(int poolSize) {
+    // the queue is bounded by submit(), which knows which tasks can be discarded
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+        60, TimeUnit.SECONDS,
+        new PriorityBlockingQueue<>(),
+        new DispatcherThreadFactory("build-notifications-"));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * The delivery of a message, ordered by priority and then by the order it was submitted.
+   */
+  private class Task implements Runnable, Comparable<Task> {
+
+    private final Outbox.Entry entry;
+    private final String sequence;
+    private final Payload.Priority priority;
+    private final long order;
+
+    private Task(Outbox.Entry entry, String sequence, Payload.Priority priority, long order) {
+      this.entry = entry;
+      this.sequence = sequence;
+      this.priority = priority;
+      this.order = order;
+    }
+
+    @Override
+    public void run() {
+      boolean held = false;
+      try {
+        held = deliver(this);
+      } finally {
+        if (sequence != null && !held) {
+          next(sequence);
+        }
+      }
+    }
+
+    @Override
+    public int compareTo(Task other) {
+      int result = priority.compareTo(other.priority);
+      return result != 0 ? result : Long.compare(order, other.order);
+    }
+
+  }
+
+  private static class DispatcherThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    private DispatcherThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  }
+
+}
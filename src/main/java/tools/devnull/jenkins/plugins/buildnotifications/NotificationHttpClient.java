@@ -0,0 +1,217 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A pooled http client shared by every message implementation. Connections are kept alive between notifications
+ * and released back to the pool after each response is consumed.
+ *
+ * @author Ataxexe
+ */
+public class NotificationHttpClient {
+
+  /**
+   * The default number of connections in the pool
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS = 20;
+  /**
+   * The default number of connections to the same host
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+  /**
+   * The time to establish a connection (in milliseconds)
+   */
+  public static final int CONNECT_TIMEOUT = 10_000;
+  /**
+   * The time to wait for data from a connection (in milliseconds)
+   */
+  public static final int SOCKET_TIMEOUT = 30_000;
+
+  /**
+   * The number of bytes of a response body that are kept (the rest is read and discarded)
+   */
+  static final int MAX_BODY_SIZE = 64 * 1024;
+  private static final long IDLE_TIMEOUT = 60_000;
+
+  private static final NotificationHttpClient INSTANCE = new NotificationHttpClient();
+
+  private final MultiThreadedHttpConnectionManager connectionManager;
+  private final HttpClient client;
+
+  private NotificationHttpClient() {
+    this.connectionManager = new MultiThreadedHttpConnectionManager();
+    this.client = new HttpClient(connectionManager);
+    this.client.getParams().setConnectionManagerTimeout(CONNECT_TIMEOUT);
+    this.connectionManager.getParams().setConnectionTimeout(CONNECT_TIMEOUT);
+    this.connectionManager.getParams().setSoTimeout(SOCKET_TIMEOUT);
+    configure(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST);
+
+    IdleConnectionTimeoutThread idleConnectionTimeout = new IdleConnectionTimeoutThread();
+    idleConnectionTimeout.setName("build-notifications-idle-connections");
+    idleConnectionTimeout.setTimeoutInterval(IDLE_TIMEOUT / 2);
+    idleConnectionTimeout.setConnectionTimeout(IDLE_TIMEOUT);
+    idleConnectionTimeout.addConnectionManager(connectionManager);
+    idleConnectionTimeout.start();
+  }
+
+  /**
+   * Returns the client shared by all messages.
+   *
+   * @return the plugin-wide http client
+   */
+  public static NotificationHttpClient get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Changes the limits of the connection pool.
+   *
+   * @param maxConnections        the number of connections in the pool
+   * @param maxConnectionsPerHost the number of connections to the same host
+   */
+  public void configure(int maxConnections, int maxConnectionsPerHost) {
+    HttpConnectionManagerParams params = connectionManager.getParams();
+    params.setMaxTotalConnections(maxConnections);
+    params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+  }
+
+  /**
+   * Executes the given method, consumes its response and releases the connection back to the pool. The time spent
+   * is recorded in the {@link DeliveryMetrics metrics} of the given notification service.
+   * <p>
+   * Requests are guarded by the {@link CircuitBreaker circuit breaker} of the target host: network errors, timeouts
+   * and server errors count as failures and, while the circuit is open, the method is not executed at all. Methods
+   * aborted by the deadline or by an interruption don't count, since the host had no chance to answer.
+   * <p>
+   * If the current thread has a {@link Deadline deadline}, the method is aborted when it expires.
+   *
+   * @param provider the name of the notification service
+   * @param method   the method to execute
+   * @return the response of the method
+   * @throws CircuitBreaker.OpenException if the circuit of the target host is open
+   * @throws IOException                  if an I/O error occurs
+   */
+  public ProviderResponse execute(String provider, HttpMethodBase method) throws IOException {
+    Deadline deadline = Deadline.current();
+    if (deadline != null) {
+      deadline.check();
+    }
+    CircuitBreaker circuit = CircuitBreaker.of(method.getURI().getHost());
+    circuit.acquire();
+    ProviderResponse result;
+    long start = System.nanoTime();
+    long response = 0;
+    Deadline.Registration registration = deadline != null ? deadline.register(method::abort) : null;
+    try {
+      int status = client.executeMethod(method);
+      response = System.nanoTime() - start;
+      Header retryAfter = method.getResponseHeader("Retry-After");
+      result = new ProviderResponse(status, readBody(method), retryAfter != null ? retryAfter.getValue() : null);
+    } catch (IOException | RuntimeException e) {
+      if ((deadline != null && deadline.isExpired()) || Thread.currentThread().isInterrupted()) {
+        circuit.released();
+      } else {
+        circuit.failed();
+      }
+      throw e;
+    } finally {
+      if (registration != null) {
+        registration.close();
+      }
+      method.releaseConnection();
+      long roundTrip = System.nanoTime() - start;
+      DeliveryMetrics.of(provider).exchanged(response > 0 ? response : roundTrip, roundTrip);
+    }
+    if (result.getStatus() >= 500) {
+      circuit.failed();
+    } else {
+      circuit.succeeded();
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of connections currently in the pool (in use or idle)
+   */
+  public int getConnectionsInPool() {
+    return connectionManager.getConnectionsInPool();
+  }
+
+  /**
+   * @return the number of connections allowed in the pool
+   */
+  public int getMaxConnections() {
+    return connectionManager.getParams().getMaxTotalConnections();
+  }
+
+  /**
+   * @return the number of connections allowed to the same host
+   */
+  public int getMaxConnectionsPerHost() {
+    return connectionManager.getParams().getDefaultMaxConnectionsPerHost();
+  }
+
+  static String readBody(HttpMethodBase method) throws IOException {
+    InputStream input = method.getResponseBodyAsStream();
+    if (input == null) {
+      return "";
+    }
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = input.read(buffer)) != -1) {
+      // the whole body must be read to reuse the connection, but only the beginning is kept
+      if (output.size() < MAX_BODY_SIZE) {
+        output.write(buffer, 0, Math.min(read, MAX_BODY_SIZE - output.size()));
+      }
+    }
+    return new String(output.toByteArray(), charsetOf(method));
+  }
+
+  private static Charset charsetOf(HttpMethodBase method) {
+    try {
+      return Charset.forName(method.getResponseCharSet());
+    } catch (RuntimeException e) {
+      return StandardCharsets.UTF_8;
+    }
+  }
+
+}
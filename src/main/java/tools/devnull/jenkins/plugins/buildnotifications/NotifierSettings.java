@@ -7,6 +7,13 @@ import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Created by christian on 9/27/17.
@@ -16,9 +23,54 @@ public class NotifierSettings extends GlobalConfiguration{
 
     private String brokenMSG, stillBrokenMSG, fixedMSG, successMSG;
     private String abortedRES, failureRES, notBuildRES, successRES, unstableRES;
+    private int poolSize, queueCapacity;
+    private int deliveryTimeout, shutdownTimeout;
+    private int maxConnections, maxConnectionsPerHost;
+    private int coalescingWindow;
+    private int maxChangelogEntries, maxChangelogCharacters;
+    private CircuitBreaker.Policy openCircuitPolicy;
+
+    private static volatile Labels labels = new Labels();
+    private static volatile ChangelogRenderer changelog = new ChangelogRenderer(
+        ChangelogRenderer.DEFAULT_MAX_ENTRIES, ChangelogRenderer.DEFAULT_MAX_CHARACTERS);
 
     public NotifierSettings(){
         load();
+        labels = new Labels(this);
+        changelog = new ChangelogRenderer(getMaxChangelogEntries(), getMaxChangelogCharacters());
+        NotificationDispatcher.get().configure(getPoolSize(), getQueueCapacity());
+        NotificationDispatcher.get().setTimeouts(getDeliveryTimeout(), getShutdownTimeout());
+        NotificationHttpClient.get().configure(getMaxConnections(), getMaxConnectionsPerHost());
+        StormCoalescer.get().setWindow(coalescingWindow);
+        CircuitBreaker.setPolicy(getOpenCircuitPolicy());
+    }
+
+    /**
+     * Returns the alternative labels currently configured. The returned object is immutable and is replaced
+     * as a whole each time the settings change, so it can be used without touching the configuration file.
+     *
+     * @return the configured labels
+     */
+    public static Labels labels() {
+        return labels;
+    }
+
+    /**
+     * Replaces the alternative labels, the same way it's done when the settings are loaded or changed.
+     *
+     * @param labels the labels to use
+     */
+    static void labels(Labels labels) {
+        NotifierSettings.labels = labels;
+    }
+
+    /**
+     * Returns the renderer for build changes, configured with the current limits.
+     *
+     * @return the configured renderer
+     */
+    public static ChangelogRenderer changelog() {
+        return changelog;
     }
 
     @DataBoundConstructor
@@ -55,10 +107,124 @@ public class NotifierSettings extends GlobalConfiguration{
         successRES = config.getString("successRES");
         unstableRES = config.getString("unstableRES");
 
+        poolSize = config.optInt("poolSize", NotificationDispatcher.DEFAULT_POOL_SIZE);
+        queueCapacity = config.optInt("queueCapacity", NotificationDispatcher.DEFAULT_QUEUE_CAPACITY);
+        NotificationDispatcher.get().configure(getPoolSize(), getQueueCapacity());
+
+        deliveryTimeout = config.optInt("deliveryTimeout", NotificationDispatcher.DEFAULT_DELIVERY_TIMEOUT);
+        shutdownTimeout = config.optInt("shutdownTimeout", NotificationDispatcher.DEFAULT_SHUTDOWN_TIMEOUT);
+        NotificationDispatcher.get().setTimeouts(getDeliveryTimeout(), getShutdownTimeout());
+
+        maxConnections = config.optInt("maxConnections", NotificationHttpClient.DEFAULT_MAX_CONNECTIONS);
+        maxConnectionsPerHost = config.optInt("maxConnectionsPerHost",
+            NotificationHttpClient.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        NotificationHttpClient.get().configure(getMaxConnections(), getMaxConnectionsPerHost());
+
+        coalescingWindow = Math.max(0, config.optInt("coalescingWindow", 0));
+        StormCoalescer.get().setWindow(coalescingWindow);
+
+        maxChangelogEntries = config.optInt("maxChangelogEntries", ChangelogRenderer.DEFAULT_MAX_ENTRIES);
+        maxChangelogCharacters = config.optInt("maxChangelogCharacters", ChangelogRenderer.DEFAULT_MAX_CHARACTERS);
+
+        openCircuitPolicy = CircuitBreaker.Policy.valueOf(
+            config.optString("openCircuitPolicy", CircuitBreaker.Policy.RETRY.name()));
+        CircuitBreaker.setPolicy(openCircuitPolicy);
+
         save();
+        labels = new Labels(this);
+        changelog = new ChangelogRenderer(getMaxChangelogEntries(), getMaxChangelogCharacters());
         return true;
     }
 
+    /**
+     * @return the number of threads used to deliver notifications
+     */
+    public int getPoolSize() {
+        return poolSize > 0 ? poolSize : NotificationDispatcher.DEFAULT_POOL_SIZE;
+    }
+
+    /**
+     * @return the number of notifications that can wait for delivery
+     */
+    public int getQueueCapacity() {
+        return queueCapacity > 0 ? queueCapacity : NotificationDispatcher.DEFAULT_QUEUE_CAPACITY;
+    }
+
+    /**
+     * @return how many seconds a notification has to reach all of its recipients
+     */
+    public int getDeliveryTimeout() {
+        return deliveryTimeout > 0 ? deliveryTimeout : NotificationDispatcher.DEFAULT_DELIVERY_TIMEOUT;
+    }
+
+    /**
+     * @return how many seconds pending notifications have to be sent when Jenkins is shutting down
+     */
+    public int getShutdownTimeout() {
+        return shutdownTimeout > 0 ? shutdownTimeout : NotificationDispatcher.DEFAULT_SHUTDOWN_TIMEOUT;
+    }
+
+    /**
+     * @return the number of connections kept in the http connection pool
+     */
+    public int getMaxConnections() {
+        return maxConnections > 0 ? maxConnections : NotificationHttpClient.DEFAULT_MAX_CONNECTIONS;
+    }
+
+    /**
+     * @return the number of connections to the same host kept in the http connection pool
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost > 0 ? maxConnectionsPerHost : NotificationHttpClient.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    }
+
+    /**
+     * @return how many seconds still broken notifications are buffered before being sent as a digest
+     */
+    public int getCoalescingWindow() {
+        return coalescingWindow;
+    }
+
+    /**
+     * @return how many changes are listed in a notification
+     */
+    public int getMaxChangelogEntries() {
+        return maxChangelogEntries > 0 ? maxChangelogEntries : ChangelogRenderer.DEFAULT_MAX_ENTRIES;
+    }
+
+    /**
+     * @return how many characters of changes are included in a notification
+     */
+    public int getMaxChangelogCharacters() {
+        return maxChangelogCharacters > 0 ? maxChangelogCharacters : ChangelogRenderer.DEFAULT_MAX_CHARACTERS;
+    }
+
+    /**
+     * @return what happens to notifications while a notification service is down
+     */
+    public CircuitBreaker.Policy getOpenCircuitPolicy() {
+        return openCircuitPolicy != null ? openCircuitPolicy : CircuitBreaker.Policy.RETRY;
+    }
+
+    /**
+     * @return a summary of the http connection pool usage
+     */
+    public String getConnectionPoolStatistics() {
+        NotificationHttpClient client = NotificationHttpClient.get();
+        return String.format("%d of %d connections in pool (%d per host)",
+            client.getConnectionsInPool(), client.getMaxConnections(), client.getMaxConnectionsPerHost());
+    }
+
+    /**
+     * Serves the {@link DeliveryMetrics delivery metrics} as json for monitoring tools. Requires the administer
+     * permission.
+     */
+    public void doMetrics(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(DeliveryMetrics.report());
+    }
+
     public String getBrokenMSG() {
         return brokenMSG;
     }
@@ -175,4 +341,55 @@ public class NotifierSettings extends GlobalConfiguration{
     public String getSuccessMSG(){
         return "Success ;D";
     }*/
+
+    /**
+     * An immutable lookup table of the alternative labels for build status and build results.
+     */
+    public static final class Labels {
+
+        private final Map<BuildStatus, String> status;
+        private final Map<Result, String> results;
+
+        Labels() {
+            this.status = Collections.emptyMap();
+            this.results = Collections.emptyMap();
+        }
+
+        Labels(NotifierSettings settings) {
+            Map<BuildStatus, String> status = new EnumMap<>(BuildStatus.class);
+            for (BuildStatus buildStatus : BuildStatus.values()) {
+                put(status, buildStatus, settings.alternativeMSG(buildStatus));
+            }
+            Map<Result, String> results = new HashMap<>();
+            for (Result result : new Result[]{Result.ABORTED, Result.FAILURE, Result.NOT_BUILT, Result.SUCCESS,
+                Result.UNSTABLE}) {
+                put(results, result, settings.alternativeResult(result));
+            }
+            this.status = Collections.unmodifiableMap(status);
+            this.results = Collections.unmodifiableMap(results);
+        }
+
+        private static <K> void put(Map<K, String> map, K key, String value) {
+            if (value != null && !value.isEmpty()) {
+                map.put(key, value);
+            }
+        }
+
+        /**
+         * @param buildStatus the build status
+         * @return the alternative label for the given status or {@code null} if there is none
+         */
+        public String of(BuildStatus buildStatus) {
+            return status.get(buildStatus);
+        }
+
+        /**
+         * @param result the build result
+         * @return the alternative label for the given result or {@code null} if there is none
+         */
+        public String of(Result result) {
+            return results.get(result);
+        }
+
+    }
 }
@@ -0,0 +1,380 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A durable store for the notifications that were not delivered yet. Each pending notification is kept in its own
+ * file under {@code JENKINS_HOME/build-notifications/outbox} until every recipient receives it, so undelivered
+ * notifications survive a restart.
+ * <p>
+ * Files are written by a single background thread, in the order the changes are made, so storing a notification
+ * doesn't hold the build (or the Pipeline) thread. The credentials of the notification services are not part of the
+ * stored messages: they are taken from the global configuration when the messages are read back.
+ *
+ * @author Ataxexe
+ */
+public class Outbox {
+
+  private static final Logger LOGGER = Logger.getLogger(Outbox.class.getName());
+
+  /**
+   * The number of times a message is sent before being discarded
+   */
+  public static final int MAX_ATTEMPTS = 10;
+
+  private static final Outbox INSTANCE = new Outbox(Outbox::defaultDirectory,
+      Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "build-notifications-outbox");
+        thread.setDaemon(true);
+        return thread;
+      }));
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Supplier<File> directory;
+  private final Executor writer;
+
+  /**
+   * Creates a new outbox based on the given parameters
+   *
+   * @param directory the directory that holds the files (it may supply {@code null} to keep the entries in memory)
+   * @param writer    the executor that writes the files, which must run the writes in the order they are given
+   */
+  Outbox(Supplier<File> directory, Executor writer) {
+    this.directory = directory;
+    this.writer = writer;
+  }
+
+  /**
+   * Returns the outbox shared by all notifiers.
+   *
+   * @return the plugin-wide outbox
+   */
+  public static Outbox get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Stores the given message before its delivery.
+   *
+   * @param message the message to store
+   * @return the entry that represents the pending message
+   */
+  public Entry add(Message message) {
+    return add(message, null);
+  }
+
+  /**
+   * Stores the given message of a sequence before its delivery.
+   *
+   * @param message  the message to store
+   * @param sequence the sequence of the message ({@code null} if its order doesn't matter)
+   * @return the entry that represents the pending message
+   */
+  public Entry add(Message message, String sequence) {
+    Entry entry = new Entry(message, sequence);
+    entries.put(entry.id, entry);
+    write(entry);
+    return entry;
+  }
+
+  /**
+   * Persists the current state of the given entry.
+   *
+   * @param entry the entry to update
+   */
+  public void update(Entry entry) {
+    write(entry);
+  }
+
+  /**
+   * Registers a delivery attempt of the given entry. The entry is removed once every recipient receives the message
+   * or after {@link #MAX_ATTEMPTS} attempts, otherwise its new state is stored.
+   *
+   * @param entry  the pending message
+   * @param result the outcome of the attempt ({@code null} if the delivery broke before reaching the recipients)
+   * @return {@code true} if the message should be tried again
+   */
+  public boolean attempted(Entry entry, DeliveryResult result) {
+    entry.attempted(result);
+    if (entry.isDone()) {
+      remove(entry);
+      return false;
+    }
+    if (entry.getAttempts() >= MAX_ATTEMPTS) {
+      LOGGER.severe(String.format("Giving up notification to %s after %d attempts",
+          RecipientResult.mask(entry.getRecipients()), entry.getAttempts()));
+      remove(entry);
+      return false;
+    }
+    update(entry);
+    return true;
+  }
+
+  /**
+   * Acknowledges the given entry, removing it from this outbox.
+   *
+   * @param entry the entry to remove
+   */
+  public void remove(Entry entry) {
+    entries.remove(entry.id);
+    writer.execute(() -> {
+      XmlFile file = fileOf(entry.id);
+      if (file != null) {
+        file.delete();
+      }
+    });
+  }
+
+  /**
+   * @return the number of notifications waiting for delivery
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Reads the pending notifications stored on disk.
+   *
+   * @return the entries found on disk, from the oldest to the newest
+   */
+  public List<Entry> load() {
+    File directory = this.directory.get();
+    File[] files = directory != null ? directory.listFiles((dir, name) -> name.endsWith(".xml")) : null;
+    if (files == null) {
+      return Collections.emptyList();
+    }
+    List<Entry> result = new ArrayList<>(files.length);
+    for (File file : files) {
+      XmlFile xmlFile = new XmlFile(file);
+      try {
+        Entry entry = (Entry) xmlFile.read();
+        entries.put(entry.id, entry);
+        result.add(entry);
+      } catch (IOException | RuntimeException e) {
+        LOGGER.log(Level.WARNING, "Discarding unreadable notification " + file, e);
+        xmlFile.delete();
+      }
+    }
+    // messages of a sequence are replayed in the order they were stored
+    result.sort(Comparator.comparingLong(entry -> entry.created));
+    return result;
+  }
+
+  /**
+   * Reads the pending notifications stored on disk and hands them to the given dispatcher.
+   *
+   * @param dispatcher the dispatcher that delivers the notifications
+   * @return the number of notifications found
+   */
+  public int replay(NotificationDispatcher dispatcher) {
+    List<Entry> pending = load();
+    if (!pending.isEmpty()) {
+      LOGGER.info(String.format("Replaying %d pending notifications", pending.size()));
+      pending.forEach(dispatcher::resume);
+    }
+    return pending.size();
+  }
+
+  /**
+   * Waits for the changes made so far to be written.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit    the unit of the timeout
+   * @return {@code true} if the changes were written before the timeout
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+    CountDownLatch written = new CountDownLatch(1);
+    writer.execute(written::countDown);
+    return written.await(timeout, unit);
+  }
+
+  /**
+   * Delivers the notifications that were pending when Jenkins stopped.
+   */
+  @Initializer(after = InitMilestone.JOB_LOADED)
+  public static void replay() {
+    get().replay(NotificationDispatcher.get());
+  }
+
+  private void write(Entry entry) {
+    // the entry keeps changing while it's delivered, so the writer gets a copy of its current state
+    Entry snapshot = entry.snapshot();
+    writer.execute(() -> {
+      XmlFile file = fileOf(snapshot.id);
+      // entries removed before being written don't need a file
+      if (file != null && entries.containsKey(snapshot.id)) {
+        try {
+          file.write(snapshot);
+        } catch (IOException e) {
+          LOGGER.log(Level.WARNING, "Unable to store pending notification", e);
+        }
+      }
+    });
+  }
+
+  private XmlFile fileOf(String id) {
+    File directory = this.directory.get();
+    return directory != null ? new XmlFile(new File(directory, id + ".xml")) : null;
+  }
+
+  private static File defaultDirectory() {
+    Jenkins jenkins = Jenkins.getInstanceOrNull();
+    return jenkins != null ? new File(jenkins.getRootDir(), "build-notifications/outbox") : null;
+  }
+
+  /**
+   * A notification waiting for delivery.
+   */
+  public static class Entry {
+
+    // the creation time of the last entry, which keeps the entries created in the same millisecond in order
+    private static final AtomicLong LAST_CREATED = new AtomicLong();
+
+    private final String id;
+    private final Message message;
+    private final String sequence;
+    private final long created;
+    private final List<String> recipients;
+    private int attempts;
+    // the delay asked by the last attempt, which is not worth keeping across restarts
+    private transient long retryAfter;
+
+    private Entry(Message message, String sequence) {
+      this.id = UUID.randomUUID().toString();
+      this.message = message;
+      this.sequence = sequence;
+      this.created = LAST_CREATED.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
+      this.recipients = new ArrayList<>(message.getRecipients());
+    }
+
+    private Entry(Entry entry) {
+      this.id = entry.id;
+      this.message = entry.message;
+      this.sequence = entry.sequence;
+      this.created = entry.created;
+      this.recipients = new ArrayList<>(entry.recipients);
+      this.attempts = entry.attempts;
+    }
+
+    public Message getMessage() {
+      return message;
+    }
+
+    /**
+     * @return the sequence of the message or {@code null} if its order doesn't matter
+     */
+    public String getSequence() {
+      return sequence;
+    }
+
+    /**
+     * @return the recipients that didn't receive the message yet
+     */
+    public synchronized Collection<String> getRecipients() {
+      return new ArrayList<>(recipients);
+    }
+
+    /**
+     * @return how many times the delivery was attempted
+     */
+    public synchronized int getAttempts() {
+      return attempts;
+    }
+
+    /**
+     * @return the time (in milliseconds) the last attempt asked to wait before the next one or {@code -1} if there is
+     * no such delay
+     * @see DeliveryResult#getRetryAfter()
+     */
+    public synchronized long getRetryAfter() {
+      return retryAfter;
+    }
+
+    /**
+     * Registers a delivery attempt, keeping only the recipients that failed and can be retried. An attempt held back
+     * by the {@link RateLimiter} never reached the notification services, so it doesn't count.
+     *
+     * @param result the outcome of the attempt ({@code null} keeps all of the recipients)
+     */
+    public synchronized void attempted(DeliveryResult result) {
+      if (result == null) {
+        attempts++;
+        retryAfter = -1;
+        return;
+      }
+      if (!result.isThrottled()) {
+        attempts++;
+      }
+      retryAfter = result.getRetryAfter();
+      recipients.clear();
+      for (RecipientResult recipientResult : result.getFailures()) {
+        if (recipientResult.isRetryable()) {
+          recipients.add(recipientResult.getRecipient());
+        }
+      }
+    }
+
+    /**
+     * @return {@code true} if there is no recipient waiting for this message
+     */
+    public synchronized boolean isDone() {
+      return recipients.isEmpty();
+    }
+
+    private synchronized Entry snapshot() {
+      return new Entry(this);
+    }
+
+  }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import tools.devnull.jenkins.plugins.buildnotifications.MessageTemplate.Placeholder;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The content of a notification, independent of the service that delivers it. Payloads are immutable, so the same
+ * instance can be shared by many messages, delivered concurrently and retried without being copied. Use a
+ * {@link Builder} to create one (or {@link #toBuilder()} to derive one from another).
+ *
+ * @author Ataxexe
+ */
+public final class Payload {
+
+  /**
+   * A payload without any content
+   */
+  public static final Payload EMPTY = builder().build();
+
+  private final String title;
+  private final String content;
+  private final String url;
+  private final String urlTitle;
+  private final Priority priority;
+  private final BuildStatus status;
+  private final String job;
+  private final int number;
+  private final String changes;
+  private final String extraMessage;
+  private final String origin;
+
+  private Payload(Builder builder) {
+    this.title = builder.title;
+    this.content = builder.content;
+    this.url = builder.url;
+    this.urlTitle = builder.urlTitle;
+    this.priority = builder.priority;
+    this.status = builder.status;
+    this.job = builder.job;
+    this.number = builder.number;
+    this.changes = builder.changes;
+    this.extraMessage = builder.extraMessage;
+    this.origin = builder.origin;
+  }
+
+  /**
+   * @return a builder for a new payload
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return a builder initialized with the values of this payload
+   */
+  public Builder toBuilder() {
+    Builder builder = new Builder();
+    builder.title = title;
+    builder.content = content;
+    builder.url = url;
+    builder.urlTitle = urlTitle;
+    builder.priority = priority;
+    builder.status = status;
+    builder.job = job;
+    builder.number = number;
+    builder.changes = changes;
+    builder.extraMessage = extraMessage;
+    builder.origin = origin;
+    return builder;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public String getUrlTitle() {
+    return urlTitle;
+  }
+
+  public Priority getPriority() {
+    return priority;
+  }
+
+  /**
+   * @return the status of the build or {@code null} if the payload is not about a single build
+   */
+  public BuildStatus getStatus() {
+    return status;
+  }
+
+  public String getJob() {
+    return job;
+  }
+
+  public int getNumber() {
+    return number;
+  }
+
+  public String getChanges() {
+    return changes;
+  }
+
+  public String getExtraMessage() {
+    return extraMessage;
+  }
+
+  /**
+   * @return the externalizable id of the build that records the deliveries of this payload or {@code null} if
+   * they are not recorded
+   * @see DeliveryRecord
+   */
+  public String getOrigin() {
+    return origin;
+  }
+
+  /**
+   * Returns the values of this payload to be rendered by a {@link MessageTemplate}.
+   *
+   * @return the value of each placeholder
+   */
+  public Map<Placeholder, String> values() {
+    Map<Placeholder, String> values = new EnumMap<>(Placeholder.class);
+    values.put(Placeholder.TITLE, title);
+    values.put(Placeholder.CONTENT, content);
+    values.put(Placeholder.URL, url);
+    values.put(Placeholder.URL_TITLE, urlTitle);
+    values.put(Placeholder.EXTRA_MESSAGE, extraMessage);
+    if (status != null) {
+      values.put(Placeholder.STATUS, status.tag());
+      values.put(Placeholder.JOB, job);
+      values.put(Placeholder.NUMBER, String.valueOf(number));
+      values.put(Placeholder.CHANGES, changes);
+    }
+    return values;
+  }
+
+  /**
+   * The priority of a notification. Services that don't support priorities ignore it.
+   */
+  public enum Priority {
+    HIGH, NORMAL, LOW
+  }
+
+  /**
+   * A builder of payloads. Builders are not thread safe, but the payloads they build are.
+   */
+  public static final class Builder {
+
+    private String title;
+    private String content;
+    private String url;
+    private String urlTitle;
+    private Priority priority = Priority.NORMAL;
+    private BuildStatus status;
+    private String job;
+    private int number;
+    private String changes;
+    private String extraMessage;
+    private String origin;
+
+    private Builder() {
+    }
+
+    public Builder title(String title) {
+      this.title = title;
+      return this;
+    }
+
+    public Builder content(String content) {
+      this.content = content;
+      return this;
+    }
+
+    public Builder url(String url, String title) {
+      this.url = url;
+      this.urlTitle = title;
+      return this;
+    }
+
+    public Builder priority(Priority priority) {
+      this.priority = priority;
+      return this;
+    }
+
+    public Builder extraMessage(String extraMessage) {
+      this.extraMessage = extraMessage;
+      return this;
+    }
+
+    /**
+     * Sets the build that records the deliveries of the payload.
+     *
+     * @param origin the externalizable id of the build or {@code null} to not record the deliveries
+     * @return this builder
+     */
+    public Builder origin(String origin) {
+      this.origin = origin;
+      return this;
+    }
+
+    /**
+     * Sets the details of the build this payload is about.
+     *
+     * @param status  the status of the build
+     * @param job     the name of the job
+     * @param number  the number of the build
+     * @param changes the changes included in the build
+     * @return this builder
+     */
+    public Builder about(BuildStatus status, String job, int number, String changes) {
+      this.status = status;
+      this.job = job;
+      this.number = number;
+      this.changes = changes;
+      return this;
+    }
+
+    /**
+     * Fills this builder with the given notification. The priority depends on the status of the build: broken
+     * builds are high priority, fixed builds are normal priority and successful builds are low priority. The
+     * deliveries of the payload are recorded in the build.
+     *
+     * @param notification the notification about the build
+     * @param baseUrl      the Jenkins root url
+     * @return this builder
+     */
+    public Builder notification(Notification notification, String baseUrl) {
+      switch (notification.getStatus()) {
+        case FIXED:
+          priority(Priority.NORMAL);
+          break;
+        case BROKEN:
+        case STILL_BROKEN:
+          priority(Priority.HIGH);
+          break;
+        case SUCCESSFUL:
+          priority(Priority.LOW);
+          break;
+      }
+      return about(notification.getStatus(), notification.getJob(), notification.getNumber(),
+          notification.getChanges())
+          .origin(notification.getBuildId())
+          .content(notification.getContent())
+          .title(notification.getTitle())
+          .url(String.format("%s%s", baseUrl, notification.getPath()), "Go to build");
+    }
+
+    public Payload build() {
+      return new Payload(this);
+    }
+
+  }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A class that holds the relevant parts of a response from a notification service.
+ * <p>
+ * Responses are classified by their status code when they're created. Providers that report the outcome in the
+ * body (with a successful status code, in some cases) {@link #classified(Outcome, String) reclassify} them based
+ * on the {@link #fields(String...) fields} of the body.
+ *
+ * @author Ataxexe
+ */
+public class ProviderResponse {
+
+  private final int status;
+  private final String body;
+  private final String retryAfter;
+  private final Outcome outcome;
+  private final String error;
+
+  /**
+   * Creates a new response based on the given parameters
+   *
+   * @param status the http status code
+   * @param body   the response body (may be truncated)
+   */
+  public ProviderResponse(int status, String body) {
+    this(status, body, null);
+  }
+
+  /**
+   * Creates a new response based on the given parameters
+   *
+   * @param status     the http status code
+   * @param body       the response body (may be truncated)
+   * @param retryAfter the value of the Retry-After header (may be {@code null})
+   */
+  public ProviderResponse(int status, String body, String retryAfter) {
+    this(status, body, retryAfter, outcomeOf(status), null);
+  }
+
+  private ProviderResponse(int status, String body, String retryAfter, Outcome outcome, String error) {
+    this.status = status;
+    this.body = body;
+    this.retryAfter = retryAfter;
+    this.outcome = outcome;
+    this.error = error;
+  }
+
+  private static Outcome outcomeOf(int status) {
+    if (status >= 200 && status < 300) {
+      return Outcome.DELIVERED;
+    }
+    if (status == 429) {
+      return Outcome.RATE_LIMITED;
+    }
+    return status >= 500 ? Outcome.FAILED : Outcome.REJECTED;
+  }
+
+  /**
+   * Returns a copy of this response with the given classification
+   *
+   * @param outcome the outcome reported by the notification service
+   * @param error   the description of the error given by the notification service (may be {@code null})
+   * @return the classified response
+   */
+  public ProviderResponse classified(Outcome outcome, String error) {
+    return new ProviderResponse(status, body, retryAfter, outcome, error);
+  }
+
+  /**
+   * Reads the given fields of the body, which is assumed to be a json document. The body is read until every
+   * field is found (arrays yield their first element).
+   *
+   * @param paths the paths of the fields, with the keys separated by dots
+   * @return the value of each field found in the body
+   * @see JsonScanner
+   */
+  public Map<String, String> fields(String... paths) {
+    Set<String> wanted = new HashSet<>(Arrays.asList(paths));
+    Map<String, String> fields = new HashMap<>();
+    JsonScanner.scan(body, (path, value) -> {
+      if (wanted.remove(path)) {
+        fields.put(path, value);
+      }
+      return !wanted.isEmpty();
+    });
+    return fields;
+  }
+
+  /**
+   * @return the http status code
+   */
+  public int getStatus() {
+    return status;
+  }
+
+  /**
+   * @return the response body
+   */
+  public String getBody() {
+    return body;
+  }
+
+  /**
+   * Returns how long the notification service asked to wait before the next request, using either the
+   * Retry-After header or the {@code retry_after} parameter that Telegram puts in the body.
+   *
+   * @return the delay in seconds or {@code -1} if the response doesn't specify one
+   */
+  public long getRetryAfter() {
+    if (retryAfter != null) {
+      try {
+        return Long.parseLong(retryAfter.trim());
+      } catch (NumberFormatException e) {
+        // an http date, fall back to the body
+      }
+    }
+    String delay = fields("parameters.retry_after").get("parameters.retry_after");
+    if (delay != null) {
+      try {
+        return Long.parseLong(delay);
+      } catch (NumberFormatException e) {
+        // not a delay
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return how the notification service handled the message
+   */
+  public Outcome getOutcome() {
+    return outcome;
+  }
+
+  /**
+   * @return the description of the error given by the notification service or {@code null} if there is none
+   */
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * @return {@code true} if the notification service accepted the message
+   */
+  public boolean isSuccessful() {
+    return outcome == Outcome.DELIVERED;
+  }
+
+  @Override
+  public String toString() {
+    return "HTTP " + status + (error != null ? " (" + error + ")" : "") + ": " + body;
+  }
+
+}
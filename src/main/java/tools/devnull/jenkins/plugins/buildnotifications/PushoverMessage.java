@@ -26,12 +26,15 @@
  */
 package tools.devnull.jenkins.plugins.buildnotifications;
 
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.NameValuePair;
+import jenkins.model.Jenkins;
 import org.apache.commons.httpclient.methods.PostMethod;
+import tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome;
 
-import java.io.IOException;
-import java.util.logging.Logger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A class that represents a Pushover message
@@ -40,78 +43,123 @@ import java.util.logging.Logger;
  */
 public class PushoverMessage implements Message {
 
-  private static final Logger LOGGER = Logger.getLogger(PushoverMessage.class.getName());
+  /**
+   * The name used to share the fan out between Pushover messages
+   */
+  public static final String PROVIDER = "pushover";
 
   private final String userToken;
-  private final String appToken;
-
-  private String extraMessage;
-  private String content;
-  private String title;
-  private Integer priority = 0;
-  private String url;
-  private String urlTitle;
+  // the token is not stored in the outbox, it's taken from the global configuration when the message is read back
+  private final transient String appToken;
+  private final Payload payload;
 
   /**
    * Creates a new Pushover message based on the given parameters
    *
    * @param userToken the user token (the target to send the message)
    * @param appToken  the application token
+   * @param payload   the content of the message
    */
-  public PushoverMessage(String userToken, String appToken, String extraMessage) {
+  public PushoverMessage(String userToken, String appToken, Payload payload) {
     this.userToken = userToken;
     this.appToken = appToken;
-    this.extraMessage = extraMessage;
+    this.payload = payload;
   }
 
   @Override
-  public void setContent(String content) {
-    this.content = content;
+  public Payload getPayload() {
+    return payload;
   }
 
   @Override
-  public void setTitle(String title) {
-    this.title = title;
+  public Message withPayload(Payload payload) {
+    return new PushoverMessage(userToken, appToken, payload);
+  }
+
+  private Object readResolve() {
+    PushoverNotifier.PushoverDescriptor descriptor =
+        Jenkins.getInstance().getDescriptorByType(PushoverNotifier.PushoverDescriptor.class);
+    return new PushoverMessage(userToken, descriptor.getAppToken(), payload);
   }
 
   @Override
-  public void setUrl(String url, String title) {
-    this.url = url;
-    this.urlTitle = title;
+  public String getProvider() {
+    return PROVIDER;
   }
 
   @Override
-  public void highPriority() {
-    this.priority = 1;
+  public String getRoute() {
+    return PROVIDER + ":" + appToken + ":" + userToken;
   }
 
   @Override
-  public void normalPriority() {
-    this.priority = 0;
+  public List<String> getRecipients() {
+    return Collections.singletonList(userToken);
   }
 
-  public void lowPriority() {
-    this.priority = -1;
+  @Override
+  public DeliveryResult send(Collection<String> recipients) {
+    return FanOut.of(PROVIDER).send(recipients, delivery());
   }
 
   @Override
-  public void send() {
-    HttpClient client = new HttpClient();
-    PostMethod post = new PostMethod("https://api.pushover.net/1/messages.json");
-    post.setRequestBody(new NameValuePair[]{
-        new NameValuePair("token", appToken),
-        new NameValuePair("user", userToken),
-        new NameValuePair("message", content + "\n\n" + extraMessage),
-        new NameValuePair("title", title),
-        new NameValuePair("priority", priority.toString()),
-        new NameValuePair("url", url),
-        new NameValuePair("url_title", urlTitle)
-    });
-    try {
-      client.executeMethod(post);
-    } catch (IOException e) {
-      LOGGER.severe("Error while sending notification: " + e.getMessage());
-      e.printStackTrace();
+  public CompletableFuture<DeliveryResult> sendAsync(Collection<String> recipients) {
+    return FanOut.of(PROVIDER).sendAsync(recipients, delivery());
+  }
+
+  /**
+   * @return the fields shared by the requests to every user
+   */
+  FormBody body() {
+    return FormBody.of(
+        "token", appToken,
+        "message", payload.getContent() + "\n\n" + payload.getExtraMessage(),
+        "title", payload.getTitle(),
+        "priority", priorityOf(payload.getPriority()),
+        "url", payload.getUrl(),
+        "url_title", payload.getUrlTitle()
+    );
+  }
+
+  /**
+   * Renders and encodes the message once and returns the delivery shared by its users
+   */
+  private FanOut.Delivery delivery() {
+    FormBody body = DeliveryMetrics.of(PROVIDER).render(this::body);
+    return user -> {
+      PostMethod post = new PostMethod("https://api.pushover.net/1/messages.json");
+      post.setRequestEntity(body.with("user", user));
+      return classify(NotificationHttpClient.get().execute(PROVIDER, post));
+    };
+  }
+
+  /**
+   * Classifies the response using the fields of the body, which has the status of the request and its errors
+   *
+   * @param response the response of the Pushover api
+   * @return the classified response
+   */
+  static ProviderResponse classify(ProviderResponse response) {
+    Map<String, String> fields = response.fields("status", "errors");
+    if (!fields.containsKey("status")) {
+      // not an answer of the api (a proxy error page, for instance)
+      return response;
+    }
+    if ("1".equals(fields.get("status"))) {
+      return response.classified(Outcome.DELIVERED, null);
+    }
+    Outcome outcome = response.getOutcome() == Outcome.DELIVERED ? Outcome.REJECTED : response.getOutcome();
+    return response.classified(outcome, fields.get("errors"));
+  }
+
+  private static String priorityOf(Payload.Priority priority) {
+    switch (priority) {
+      case HIGH:
+        return "1";
+      case LOW:
+        return "-1";
+      default:
+        return "0";
     }
   }
 
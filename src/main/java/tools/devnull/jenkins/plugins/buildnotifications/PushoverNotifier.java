@@ -28,9 +28,9 @@ package tools.devnull.jenkins.plugins.buildnotifications;
 
 import hudson.Extension;
 import hudson.Launcher;
-import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
-import hudson.model.BuildListener;
+import hudson.model.Run;
+import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
@@ -61,13 +61,13 @@ public class PushoverNotifier extends BaseNotifier {
 
   @Override
   public BuildStepMonitor getRequiredMonitorService() {
-    return BuildStepMonitor.BUILD;
+    return BuildStepMonitor.NONE;
   }
 
   @Override
-  protected Message createMessage(String target, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+  protected Message createMessage(Targets targets, Run<?, ?> build, Launcher launcher, TaskListener listener) {
     PushoverDescriptor descriptor = (PushoverDescriptor) getDescriptor();
-    return new PushoverMessage(target, descriptor.appToken, replaceEnvString(build, getExtraMessage()));
+    return new PushoverMessage(targets.toString(), descriptor.appToken, createPayload(build));
   }
 
   /**
@@ -0,0 +1,299 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A rate limiter that keeps the deliveries under the limits of the notification services. Each limit is a token
+ * bucket identified by a key (a bot token, a chat id...) and a request must have a token from all of its buckets
+ * before being executed.
+ * <p>
+ * Requests only wait for short delays: if a bucket is blocked for longer (because the notification service rate
+ * limited a previous request, with HTTP 429 or in the body of the response), the request fails with a
+ * {@link ThrottledException} without being executed and the delivery is retried later by the
+ * {@link NotificationDispatcher} instead of holding its worker.
+ *
+ * @author Ataxexe
+ */
+public class RateLimiter {
+
+  private static final Logger LOGGER = Logger.getLogger(RateLimiter.class.getName());
+
+  /**
+   * The longest time (in nanoseconds) a request waits for its buckets
+   */
+  static final long MAX_WAIT = TimeUnit.SECONDS.toNanos(5);
+
+  private static final long DEFAULT_RETRY_AFTER = TimeUnit.SECONDS.toNanos(1);
+
+  private static final long EVICTION_INTERVAL = TimeUnit.MINUTES.toNanos(10);
+
+  private static final RateLimiter INSTANCE = new RateLimiter();
+
+  private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+  private final AtomicLong lastEviction = new AtomicLong(System.nanoTime());
+
+  /**
+   * Returns the rate limiter shared by all messages.
+   *
+   * @return the plugin-wide rate limiter
+   */
+  public static RateLimiter get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Creates a limit for the given key.
+   *
+   * @param key               the key that identifies the limit
+   * @param requestsPerSecond the number of requests allowed per second (also the size of a burst)
+   * @return the created limit
+   */
+  public static Limit limit(String key, double requestsPerSecond) {
+    return new Limit(key, requestsPerSecond);
+  }
+
+  /**
+   * Executes the given request once every limit allows it. A rate limited response blocks the buckets of the
+   * request for the delay the notification service asks for and is returned to the caller.
+   *
+   * @param request the request to execute
+   * @param limits  the limits that apply to the request
+   * @return the response of the request
+   * @throws ThrottledException if the limits don't allow the request in time
+   * @throws IOException         if an I/O error occurs or the thread is interrupted while waiting
+   */
+  public ProviderResponse execute(Request request, Limit... limits) throws IOException {
+    evictIdle();
+    TokenBucket[] reserved = new TokenBucket[limits.length];
+    long wait = 0;
+    for (int i = 0; i < limits.length; i++) {
+      reserved[i] = bucketOf(limits[i]);
+      wait = Math.max(wait, reserved[i].reserve());
+    }
+    try {
+      sleep(wait);
+    } catch (IOException e) {
+      // the request is not executed, so its tokens are given to the next ones
+      for (TokenBucket bucket : reserved) {
+        bucket.refund();
+      }
+      throw e;
+    }
+    ProviderResponse response = request.execute();
+    if (response.getOutcome() == DeliveryMetrics.Outcome.RATE_LIMITED) {
+      long retryAfter = response.getRetryAfter() >= 0 ?
+          TimeUnit.SECONDS.toNanos(response.getRetryAfter()) : DEFAULT_RETRY_AFTER;
+      LOGGER.warning(String.format("Rate limited by notification service for %ds",
+          TimeUnit.NANOSECONDS.toSeconds(retryAfter)));
+      for (TokenBucket bucket : reserved) {
+        bucket.block(retryAfter);
+      }
+    }
+    return response;
+  }
+
+  /**
+   * Removes the buckets that were not used long enough to be full again. This is done at most once every
+   * {@link #EVICTION_INTERVAL} so the buckets of chats that don't receive messages anymore don't pile up.
+   */
+  void evictIdle() {
+    long now = System.nanoTime();
+    long last = lastEviction.get();
+    if (now - last >= EVICTION_INTERVAL && lastEviction.compareAndSet(last, now)) {
+      evict();
+    }
+  }
+
+  /**
+   * Removes the idle buckets right away.
+   */
+  void evict() {
+    for (String key : buckets.keySet()) {
+      buckets.computeIfPresent(key, (k, bucket) -> bucket.isIdle() ? null : bucket);
+    }
+  }
+
+  /**
+   * @return the number of buckets in use
+   */
+  int size() {
+    return buckets.size();
+  }
+
+  private TokenBucket bucketOf(Limit limit) {
+    return buckets.computeIfAbsent(limit.key, key -> new TokenBucket(limit.requestsPerSecond));
+  }
+
+  private static void sleep(long nanos) throws IOException {
+    if (nanos > 0) {
+      if (nanos > MAX_WAIT) {
+        throw new ThrottledException(TimeUnit.NANOSECONDS.toMillis(nanos));
+      }
+      Deadline deadline = Deadline.current();
+      if (deadline != null && TimeUnit.NANOSECONDS.toMillis(nanos) > deadline.remaining()) {
+        throw new InterruptedIOException("Deadline exceeded while waiting for the rate limit");
+      }
+      try {
+        TimeUnit.NANOSECONDS.sleep(nanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+      }
+    }
+  }
+
+  /**
+   * Interface that defines a request to a notification service.
+   */
+  public interface Request {
+
+    /**
+     * Executes the request
+     *
+     * @return the response of the notification service
+     * @throws IOException if an I/O error occurs
+     */
+    ProviderResponse execute() throws IOException;
+
+  }
+
+  /**
+   * Exception thrown when a request is not executed because its limits don't allow it in time. The request never
+   * reached the notification service, so it doesn't count as a failed attempt.
+   */
+  public static class ThrottledException extends IOException {
+
+    private final long retryAfter;
+
+    public ThrottledException(long retryAfter) {
+      super(String.format("Rate limited for another %ds", TimeUnit.MILLISECONDS.toSeconds(retryAfter)));
+      this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the time (in milliseconds) until the limits allow the request
+     */
+    public long getRetryAfter() {
+      return retryAfter;
+    }
+
+  }
+
+  /**
+   * A class that represents a rate limit for a key.
+   */
+  public static final class Limit {
+
+    private final String key;
+    private final double requestsPerSecond;
+
+    private Limit(String key, double requestsPerSecond) {
+      this.key = key;
+      this.requestsPerSecond = requestsPerSecond;
+    }
+
+  }
+
+  /**
+   * A token bucket that hands out reservations: a caller takes a token even if the bucket is empty and waits the
+   * returned time before using it.
+   */
+  static class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long lastRefill;
+    private long blockedUntil;
+
+    TokenBucket(double requestsPerSecond) {
+      this.capacity = Math.max(1, requestsPerSecond);
+      this.tokensPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+      this.tokens = capacity;
+      this.lastRefill = System.nanoTime();
+      this.blockedUntil = lastRefill;
+    }
+
+    /**
+     * Takes a token from this bucket.
+     *
+     * @return the time (in nanoseconds) to wait before using the token
+     */
+    synchronized long reserve() {
+      long now = refill();
+      tokens -= 1;
+      long wait = tokens < 0 ? (long) (-tokens / tokensPerNano) : 0;
+      return Math.max(wait, blockedUntil - now);
+    }
+
+    /**
+     * Gives back a token that was reserved but not used.
+     */
+    synchronized void refund() {
+      tokens = Math.min(capacity, tokens + 1);
+    }
+
+    /**
+     * Prevents this bucket from handing out tokens that can be used in the given time.
+     *
+     * @param nanos the time (in nanoseconds) to block this bucket
+     */
+    synchronized void block(long nanos) {
+      long until = System.nanoTime() + nanos;
+      if (until - blockedUntil > 0) {
+        blockedUntil = until;
+      }
+    }
+
+    /**
+     * @return {@code true} if this bucket is full and not blocked, which makes it the same as a new one
+     */
+    synchronized boolean isIdle() {
+      long now = refill();
+      return tokens >= capacity && blockedUntil - now <= 0;
+    }
+
+    private long refill() {
+      long now = System.nanoTime();
+      tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+      lastRefill = now;
+      return now;
+    }
+
+  }
+
+}
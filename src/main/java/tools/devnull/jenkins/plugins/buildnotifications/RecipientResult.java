@@ -0,0 +1,207 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A class that holds the outcome of delivering a message to a single recipient.
+ *
+ * @author Ataxexe
+ */
+public class RecipientResult {
+
+  private final String recipient;
+  private final ProviderResponse response;
+  private final String error;
+  private final long elapsedTime;
+  private final boolean retryable;
+  private final long throttledFor;
+
+  private RecipientResult(String recipient, ProviderResponse response, String error, long elapsedTime,
+                          boolean retryable, long throttledFor) {
+    this.recipient = recipient;
+    this.response = response;
+    this.error = error;
+    this.elapsedTime = elapsedTime;
+    this.retryable = retryable;
+    this.throttledFor = throttledFor;
+  }
+
+  /**
+   * Creates a result for a recipient that received a response from the notification service.
+   *
+   * @param recipient   the recipient of the message
+   * @param response    the response of the notification service
+   * @param elapsedTime the time spent in the delivery (in milliseconds)
+   * @return the created result
+   */
+  public static RecipientResult of(String recipient, ProviderResponse response, long elapsedTime) {
+    return new RecipientResult(recipient, response, null, elapsedTime, true, -1);
+  }
+
+  /**
+   * Creates a result for a recipient that could not be reached.
+   *
+   * @param recipient   the recipient of the message
+   * @param error       the description of the error
+   * @param elapsedTime the time spent in the delivery (in milliseconds)
+   * @return the created result
+   */
+  public static RecipientResult failed(String recipient, String error, long elapsedTime) {
+    return new RecipientResult(recipient, null, error, elapsedTime, true, -1);
+  }
+
+  /**
+   * Creates a result for a recipient that could not be reached and should not be tried again.
+   *
+   * @param recipient   the recipient of the message
+   * @param error       the description of the error
+   * @param elapsedTime the time spent in the delivery (in milliseconds)
+   * @return the created result
+   */
+  public static RecipientResult dropped(String recipient, String error, long elapsedTime) {
+    return new RecipientResult(recipient, null, error, elapsedTime, false, -1);
+  }
+
+  /**
+   * Creates a result for a recipient that was not tried because the rate limits of the notification service don't
+   * allow it yet.
+   *
+   * @param recipient   the recipient of the message
+   * @param e           the exception thrown by the rate limiter
+   * @param elapsedTime the time spent in the delivery (in milliseconds)
+   * @return the created result
+   */
+  public static RecipientResult throttled(String recipient, RateLimiter.ThrottledException e, long elapsedTime) {
+    return new RecipientResult(recipient, null, e.getMessage(), elapsedTime, true, e.getRetryAfter());
+  }
+
+  public String getRecipient() {
+    return recipient;
+  }
+
+  /**
+   * @return the response of the notification service or {@code null} if it could not be reached
+   */
+  public ProviderResponse getResponse() {
+    return response;
+  }
+
+  /**
+   * @return the description of the error given by the notification service or the reason it could not be reached
+   * ({@code null} if there is none)
+   */
+  public String getError() {
+    return response != null ? response.getError() : error;
+  }
+
+  /**
+   * @return the time spent in the delivery (in milliseconds)
+   */
+  public long getElapsedTime() {
+    return elapsedTime;
+  }
+
+  /**
+   * Indicates if a failed delivery may succeed if it's tried again later, which is the case for network errors,
+   * rate limited requests and transient errors of the service (unless the result was {@link #dropped dropped}).
+   *
+   * @return {@code true} if the delivery can be retried
+   */
+  public boolean isRetryable() {
+    if (response == null) {
+      return retryable;
+    }
+    return response.getOutcome() == DeliveryMetrics.Outcome.RATE_LIMITED
+        || response.getOutcome() == DeliveryMetrics.Outcome.FAILED;
+  }
+
+  /**
+   * @return {@code true} if the delivery was held back by the {@link RateLimiter} without reaching the notification
+   * service
+   */
+  public boolean isThrottled() {
+    return throttledFor >= 0;
+  }
+
+  /**
+   * Returns how long to wait before trying this recipient again, either because the notification service asked for
+   * it or because the rate limits don't allow a new request before that.
+   *
+   * @return the delay in milliseconds or {@code -1} if there is none
+   */
+  public long getRetryAfter() {
+    if (response == null) {
+      return throttledFor;
+    }
+    long retryAfter = response.getRetryAfter();
+    return retryAfter >= 0 ? TimeUnit.SECONDS.toMillis(retryAfter) : -1;
+  }
+
+  /**
+   * @return {@code true} if the notification service accepted the message
+   */
+  public boolean isSuccessful() {
+    return response != null && response.isSuccessful();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %s (%dms)", mask(recipient), response != null ? response : error, elapsedTime);
+  }
+
+  /**
+   * Hides the given recipient so it can be logged or recorded: some recipients are credentials (Pushover user keys),
+   * so only their end is kept.
+   *
+   * @param recipient the recipient to hide
+   * @return the end of the recipient
+   */
+  public static String mask(String recipient) {
+    if (recipient == null || recipient.length() <= 4) {
+      return recipient;
+    }
+    return "..." + recipient.substring(recipient.length() - 4);
+  }
+
+  /**
+   * Hides each one of the given recipients.
+   *
+   * @param recipients the recipients to hide
+   * @return the end of each recipient
+   * @see #mask(String)
+   */
+  public static List<String> mask(Collection<String> recipients) {
+    return recipients.stream().map(RecipientResult::mask).collect(Collectors.toList());
+  }
+
+}
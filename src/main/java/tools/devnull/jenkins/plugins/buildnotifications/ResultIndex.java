@@ -0,0 +1,278 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An index of the last completed build of each job, so the status of a build can be computed without loading the
+ * record of the previous build from disk. The index is kept in memory and saved as a snapshot in
+ * {@code JENKINS_HOME/build-notifications/results.xml}.
+ *
+ * @author Ataxexe
+ */
+public class ResultIndex {
+
+  private static final Logger LOGGER = Logger.getLogger(ResultIndex.class.getName());
+
+  private static final long SAVE_DELAY = 10;
+
+  private static final ResultIndex INSTANCE = new ResultIndex();
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicBoolean saveScheduled = new AtomicBoolean();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "build-notifications-result-index");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * Returns the index shared by all notifiers.
+   *
+   * @return the plugin-wide index
+   */
+  public static ResultIndex get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the result of the last build completed before the given one, if the index knows it.
+   * <p>
+   * Results recorded since Jenkins started are always up to date. Results read from the snapshot are only used for
+   * the immediately previous build, so a build that completed after the snapshot was saved is never missed.
+   *
+   * @param build the build
+   * @return the result of the previous completed build or {@code null} if it's not in the index
+   */
+  public Result previousResult(Run<?, ?> build) {
+    String job = build.getParent().getFullName();
+    Entry entry = job != null ? entries.get(job) : null;
+    if (entry == null) {
+      return null;
+    }
+    boolean previous = entry.live ? entry.number < build.getNumber() : entry.number == build.getNumber() - 1;
+    return previous ? Result.fromString(entry.result) : null;
+  }
+
+  /**
+   * Records the result of a completed build.
+   *
+   * @param job    the full name of the job
+   * @param number the number of the build
+   * @param result the result of the build
+   */
+  public void completed(String job, int number, Result result) {
+    entries.merge(job, new Entry(number, result.toString(), true),
+        (current, entry) -> entry.number > current.number ? entry : current);
+    scheduleSave();
+  }
+
+  /**
+   * Forgets the last completed build of a job if it's the given one, since the build completed before it is not
+   * known by the index.
+   *
+   * @param job    the full name of the job
+   * @param number the number of the deleted build
+   */
+  public void deleted(String job, int number) {
+    Entry entry = entries.get(job);
+    if (entry != null && entry.number == number && entries.remove(job, entry)) {
+      scheduleSave();
+    }
+  }
+
+  /**
+   * Forgets the given job.
+   *
+   * @param job the full name of the job
+   */
+  public void remove(String job) {
+    if (entries.remove(job) != null) {
+      scheduleSave();
+    }
+  }
+
+  /**
+   * Keeps the last completed build of a job that was renamed or moved.
+   *
+   * @param oldName the previous full name of the job
+   * @param newName the new full name of the job
+   */
+  public void rename(String oldName, String newName) {
+    Entry entry = entries.remove(oldName);
+    if (entry != null) {
+      entries.put(newName, entry);
+    }
+  }
+
+  /**
+   * Writes the snapshot of this index.
+   */
+  public void save() {
+    saveScheduled.set(false);
+    XmlFile file = file();
+    if (file != null) {
+      try {
+        file.write(new HashMap<>(entries));
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Unable to save the build result index", e);
+      }
+    }
+  }
+
+  /**
+   * Reads the snapshot of this index. Results recorded since Jenkins started are kept, and jobs that no longer exist
+   * (deleted while Jenkins was down, for instance) are left out.
+   */
+  @SuppressWarnings("unchecked")
+  public void load() {
+    Jenkins jenkins = Jenkins.getInstanceOrNull();
+    XmlFile file = file();
+    if (file != null && file.exists()) {
+      try {
+        ((Map<String, Entry>) file.read()).forEach((job, entry) -> {
+          if (jenkins.getItemByFullName(job, Job.class) != null) {
+            entries.putIfAbsent(job, entry);
+          }
+        });
+      } catch (IOException | RuntimeException e) {
+        LOGGER.log(Level.WARNING, "Discarding unreadable build result index", e);
+      }
+    }
+  }
+
+  /**
+   * Loads the plugin-wide index when Jenkins starts, once the jobs are known.
+   */
+  @Initializer(after = InitMilestone.JOB_LOADED)
+  public static void initialize() {
+    get().load();
+  }
+
+  /**
+   * Saves the plugin-wide index when Jenkins shuts down.
+   */
+  @Terminator
+  public static void terminate() {
+    get().save();
+  }
+
+  private void scheduleSave() {
+    if (saveScheduled.compareAndSet(false, true)) {
+      scheduler.schedule(this::save, SAVE_DELAY, TimeUnit.SECONDS);
+    }
+  }
+
+  private static XmlFile file() {
+    Jenkins jenkins = Jenkins.getInstanceOrNull();
+    return jenkins != null ? new XmlFile(new File(jenkins.getRootDir(), "build-notifications/results.xml")) : null;
+  }
+
+  /**
+   * The last completed build of a job.
+   */
+  private static class Entry {
+
+    private final int number;
+    private final String result;
+    // only entries recorded since Jenkins started are known to be the last completed build
+    private transient boolean live;
+
+    private Entry(int number, String result, boolean live) {
+      this.number = number;
+      this.result = result;
+      this.live = live;
+    }
+
+  }
+
+  /**
+   * Keeps the index up to date as builds complete or are deleted.
+   */
+  @Extension
+  public static class Listener extends RunListener<Run<?, ?>> {
+
+    @Override
+    public void onCompleted(Run<?, ?> run, TaskListener listener) {
+      Result result = run.getResult();
+      if (result != null) {
+        get().completed(run.getParent().getFullName(), run.getNumber(), result);
+      }
+    }
+
+    @Override
+    public void onDeleted(Run<?, ?> run) {
+      get().deleted(run.getParent().getFullName(), run.getNumber());
+    }
+
+  }
+
+  /**
+   * Keeps the index up to date as jobs are renamed or deleted.
+   */
+  @Extension
+  public static class JobListener extends ItemListener {
+
+    @Override
+    public void onDeleted(Item item) {
+      get().remove(item.getFullName());
+    }
+
+    @Override
+    public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+      get().rename(oldFullName, newFullName);
+    }
+
+  }
+
+}
@@ -26,12 +26,19 @@
  */
 package tools.devnull.jenkins.plugins.buildnotifications;
 
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.NameValuePair;
+import jenkins.model.Jenkins;
 import org.apache.commons.httpclient.methods.PostMethod;
+import tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome;
 
 import java.io.IOException;
-import java.util.logging.Logger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A class that represents a Slack message
@@ -40,94 +47,136 @@ import java.util.logging.Logger;
  */
 public class SlackMessage implements Message {
 
-  private static final Logger LOGGER = Logger.getLogger(SlackMessage.class.getName());
+  /**
+   * The name used to share the fan out between Slack messages
+   */
+  public static final String PROVIDER = "slack";
+
+  // https://api.slack.com/docs/rate-limits
+  private static final double CHANNEL_RATE = 1;
+
+  // https://api.slack.com/methods/chat.postMessage#errors
+  private static final Set<String> TRANSIENT_ERRORS = new HashSet<>(Arrays.asList(
+      "internal_error", "fatal_error", "service_unavailable", "request_timeout"
+  ));
 
-  private final String botToken;
-  private final String channelIds;
+  // the token is not stored in the outbox, it's taken from the global configuration when the message is read back
+  private final transient String botToken;
+  private final List<String> channelIds;
 
-  private String extraMessage;
-  private String content;
-  private String title;
-  private String url;
-  private String urlTitle;
+  private final MessageTemplate template;
+  private final Payload payload;
 
   /**
    * Creates a new Slack message based on the given parameters
    *
    * @param botToken the bot token
-   * @param channelIds  the target ids separated by commas (a group conversation id or a contact id)
+   * @param channelIds the target ids (a group conversation id or a contact id)
+   * @param template the template used to render the text of the message
+   * @param payload  the content of the message
    */
-  public SlackMessage(String botToken, String channelIds, String extraMessage) {
+  public SlackMessage(String botToken, List<String> channelIds, MessageTemplate template, Payload payload) {
     this.botToken = botToken;
-    this.channelIds = channelIds;
-    this.extraMessage = extraMessage;
+    this.channelIds = new ArrayList<>(channelIds);
+    this.template = template;
+    this.payload = payload;
+  }
+
+  @Override
+  public Payload getPayload() {
+    return payload;
   }
 
   @Override
-  public void setContent(String content) {
-    this.content = content;
+  public Message withPayload(Payload payload) {
+    return new SlackMessage(botToken, channelIds, template, payload);
+  }
+
+  private Object readResolve() {
+    SlackNotifier.SlackDescriptor descriptor =
+        Jenkins.getInstance().getDescriptorByType(SlackNotifier.SlackDescriptor.class);
+    return new SlackMessage(descriptor.getBotToken(), channelIds, template, payload);
   }
 
   @Override
-  public void setTitle(String title) {
-    this.title = title;
+  public String getProvider() {
+    return PROVIDER;
   }
 
   @Override
-  public void setUrl(String url, String title) {
-    this.url = url;
-    this.urlTitle = title;
+  public String getRoute() {
+    return PROVIDER + ":" + botToken + ":" + channelIds + ":" + template.getSource();
   }
 
   @Override
-  public void highPriority() {
-    // Not possible with Slack
+  public List<String> getRecipients() {
+    return channelIds;
   }
 
   @Override
-  public void normalPriority() {
-    // Not possible with Slack
+  public DeliveryResult send(Collection<String> recipients) {
+    return FanOut.of(PROVIDER).send(recipients, delivery());
   }
 
   @Override
-  public void lowPriority() {
-    // Not possible with Slack
+  public CompletableFuture<DeliveryResult> sendAsync(Collection<String> recipients) {
+    return FanOut.of(PROVIDER).sendAsync(recipients, delivery());
+  }
+
+  /**
+   * @return the fields shared by the requests to every channel
+   */
+  FormBody body() {
+    return FormBody.of(
+        "token", botToken,
+        "as_user", "true",
+        "text", getMessage()
+    );
   }
 
-  public void send() {
-    String[] ids = channelIds.split("\\s*,\\s*");
-    HttpClient client = new HttpClient();
-    for (String channelId : ids) {
-      PostMethod post = new PostMethod(
-          "https://slack.com/api/chat.postMessage"
-      );
-
-      post.setRequestHeader("Content-Type","application/x-www-form-urlencoded; charset=UTF-8");
-
-      post.setRequestBody(new NameValuePair[]{
-          new NameValuePair("token",botToken),
-          new NameValuePair("as_user","true"),
-          new NameValuePair("channel", channelId),
-          new NameValuePair("text", getMessage())
-      });
-      try {
-        client.executeMethod(post);
-      } catch (IOException e) {
-        LOGGER.severe("Error while sending notification: " + e.getMessage());
-        e.printStackTrace();
-      }
+  /**
+   * Renders and encodes the message once and returns the delivery shared by its channels
+   */
+  private FanOut.Delivery delivery() {
+    FormBody body = DeliveryMetrics.of(PROVIDER).render(this::body);
+    return channelId -> RateLimiter.get().execute(
+        () -> post(body, channelId),
+        RateLimiter.limit(PROVIDER + ":" + botToken + ":" + channelId, CHANNEL_RATE)
+    );
+  }
+
+  private ProviderResponse post(FormBody body, String channelId) throws IOException {
+    PostMethod post = new PostMethod(
+        "https://slack.com/api/chat.postMessage"
+    );
+    post.setRequestEntity(body.with("channel", channelId));
+    return classify(NotificationHttpClient.get().execute(PROVIDER, post));
+  }
+
+  /**
+   * Classifies the response using the fields of the body, since the Slack api answers most errors with HTTP 200
+   *
+   * @param response the response of the Slack api
+   * @return the classified response
+   */
+  static ProviderResponse classify(ProviderResponse response) {
+    Map<String, String> fields = response.fields("ok", "error");
+    if (!fields.containsKey("ok")) {
+      // not an answer of the api (a proxy error page, for instance)
+      return response;
     }
+    if ("true".equals(fields.get("ok"))) {
+      return response.classified(Outcome.DELIVERED, null);
+    }
+    String error = fields.get("error");
+    if ("ratelimited".equals(error)) {
+      return response.classified(Outcome.RATE_LIMITED, error);
+    }
+    return response.classified(TRANSIENT_ERRORS.contains(error) ? Outcome.FAILED : Outcome.REJECTED, error);
   }
 
   private String getMessage() {
-    return String.format(
-        "%s%n%n%s%n%n%s <%s>%n%n%s",
-        title,
-        content,
-        urlTitle,
-        url,
-        extraMessage
-    );
+    return template.render(payload.values());
   }
 
 }
@@ -0,0 +1,209 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Collapses repeated {@link BuildStatus#STILL_BROKEN} notifications into a single digest. When a broken dependency
+ * makes lots of jobs fail, the notifications to the same target are buffered for a configurable window and
+ * delivered as one message listing the affected builds.
+ * <p>
+ * Only messages with the same {@link Message#getRoute() route} and extra message are merged, so notifiers with
+ * different credentials or templates never share a digest. Buffered messages are kept in the {@link Outbox} until
+ * their digest is stored in their place: after a crash they are delivered on their own, and pending digests are
+ * dispatched when Jenkins shuts down. A digest that doesn't fit in the queue is retried like any other message.
+ *
+ * @author Ataxexe
+ */
+public class StormCoalescer {
+
+  private static final Logger LOGGER = Logger.getLogger(StormCoalescer.class.getName());
+
+  private static final StormCoalescer INSTANCE = new StormCoalescer(NotificationDispatcher.get(), Outbox.get());
+
+  private final NotificationDispatcher dispatcher;
+  private final Outbox outbox;
+  private final Map<String, Digest> digests = new HashMap<>();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "build-notifications-coalescer");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private volatile int window;
+
+  /**
+   * Creates a new coalescer based on the given parameters
+   *
+   * @param dispatcher the dispatcher that delivers the digests
+   * @param outbox     the outbox that keeps the buffered messages
+   */
+  StormCoalescer(NotificationDispatcher dispatcher, Outbox outbox) {
+    this.dispatcher = dispatcher;
+    this.outbox = outbox;
+  }
+
+  /**
+   * Returns the coalescer shared by all notifiers.
+   *
+   * @return the plugin-wide coalescer
+   */
+  public static StormCoalescer get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Sets how long notifications are buffered before being delivered as a digest.
+   *
+   * @param window the window in seconds ({@code 0} disables the coalescing)
+   */
+  public void setWindow(int window) {
+    this.window = window;
+  }
+
+  /**
+   * Buffers the given message if coalescing is enabled.
+   *
+   * @param message  the populated message
+   * @param sequence the sequence the message would be dispatched in
+   * @param job      the name of the job that produced the message
+   * @param number   the number of the build that produced the message
+   * @param url      the url to use in a digest
+   * @return {@code true} if the message was buffered and should not be dispatched by the caller
+   */
+  public boolean offer(Message message, String sequence, String job, int number, String url) {
+    int window = this.window;
+    if (window <= 0) {
+      return false;
+    }
+    String key = message.getRoute() + ":" + message.getPayload().getExtraMessage();
+    Outbox.Entry entry = outbox.add(message, sequence);
+    synchronized (digests) {
+      Digest digest = digests.get(key);
+      if (digest == null) {
+        Digest created = new Digest(message, url);
+        digests.put(key, created);
+        scheduler.schedule(() -> flush(key, created), window, TimeUnit.SECONDS);
+        digest = created;
+      }
+      digest.add(sequence, job, number, entry);
+    }
+    return true;
+  }
+
+  /**
+   * Dispatches every buffered digest right away.
+   */
+  public void flush() {
+    List<Digest> pending;
+    synchronized (digests) {
+      pending = new ArrayList<>(digests.values());
+      digests.clear();
+    }
+    pending.forEach(digest -> dispatch(digest, digest.sequences.iterator().next()));
+  }
+
+  /**
+   * Dispatches the digests that hold a message of the given sequence right away, in that sequence. This must be
+   * called before dispatching another message of the sequence, so the digest is delivered before it.
+   *
+   * @param sequence the sequence of the message about to be dispatched
+   */
+  public void flush(String sequence) {
+    List<Digest> pending = new ArrayList<>();
+    synchronized (digests) {
+      digests.values().removeIf(digest -> digest.sequences.contains(sequence) && pending.add(digest));
+    }
+    pending.forEach(digest -> dispatch(digest, sequence));
+  }
+
+  private void flush(String key, Digest digest) {
+    boolean pending;
+    synchronized (digests) {
+      pending = digests.remove(key, digest);
+    }
+    if (pending) {
+      // a digest holds messages of many sequences, but it can only be delivered in order with one of them
+      dispatch(digest, digest.sequences.iterator().next());
+    }
+  }
+
+  private void dispatch(Digest digest, String sequence) {
+    // the digest is stored before the buffered messages are removed, and it's retried later if the queue is full
+    dispatcher.resume(outbox.add(digest.toMessage(), sequence));
+    digest.entries.forEach(outbox::remove);
+  }
+
+  private static class Digest {
+
+    private final Message message;
+    private final String url;
+    private final List<String> builds = new ArrayList<>();
+    private final List<Outbox.Entry> entries = new ArrayList<>();
+    private final Set<String> sequences = new LinkedHashSet<>();
+
+    private Digest(Message message, String url) {
+      this.message = message;
+      this.url = url;
+    }
+
+    private void add(String sequence, String job, int number, Outbox.Entry entry) {
+      builds.add(String.format("%s #%d", job, number));
+      entries.add(entry);
+      sequences.add(sequence);
+    }
+
+    private Message toMessage() {
+      if (builds.size() > 1) {
+        LOGGER.info(String.format("Coalescing %d notifications to %s", builds.size(),
+            RecipientResult.mask(message.getRecipients())));
+        return message.withPayload(message.getPayload().toBuilder()
+            .title(String.format("%s - %d builds", BuildStatus.STILL_BROKEN.tag(), builds.size()))
+            .content(String.join("\n", builds))
+            .url(url, "Go to Jenkins")
+            // the digest is about several builds, so it has none of the details of a single build
+            .about(null, null, 0, null)
+            .origin(null)
+            .build());
+      }
+      return message;
+    }
+
+  }
+
+}
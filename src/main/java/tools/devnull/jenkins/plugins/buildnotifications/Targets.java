@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable list of notification targets, parsed from a comma separated configuration value. Blank entries and
+ * duplicates are removed.
+ *
+ * @author Ataxexe
+ */
+public final class Targets {
+
+  /**
+   * An empty list of targets
+   */
+  public static final Targets NONE = new Targets(Collections.emptyList());
+
+  private final List<String> ids;
+  private final String value;
+
+  private Targets(List<String> ids) {
+    this.ids = Collections.unmodifiableList(ids);
+    this.value = String.join(",", ids);
+  }
+
+  /**
+   * Parses the given comma separated value.
+   *
+   * @param value the configured targets (may be {@code null})
+   * @return the parsed targets
+   */
+  public static Targets parse(String value) {
+    if (value == null) {
+      return NONE;
+    }
+    Set<String> ids = new LinkedHashSet<>();
+    int start = 0;
+    while (start <= value.length()) {
+      int end = value.indexOf(',', start);
+      if (end < 0) {
+        end = value.length();
+      }
+      String id = value.substring(start, end).trim();
+      if (!id.isEmpty()) {
+        ids.add(id);
+      }
+      start = end + 1;
+    }
+    return ids.isEmpty() ? NONE : new Targets(new ArrayList<>(ids));
+  }
+
+  /**
+   * @return the ids of the targets
+   */
+  public List<String> getIds() {
+    return ids;
+  }
+
+  /**
+   * @return {@code true} if there is no target
+   */
+  public boolean isEmpty() {
+    return ids.isEmpty();
+  }
+
+  /**
+   * @return the normalized comma separated form of the targets
+   */
+  @Override
+  public String toString() {
+    return value;
+  }
+
+}
@@ -26,12 +26,16 @@
  */
 package tools.devnull.jenkins.plugins.buildnotifications;
 
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.NameValuePair;
+import jenkins.model.Jenkins;
 import org.apache.commons.httpclient.methods.PostMethod;
+import tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome;
 
 import java.io.IOException;
-import java.util.logging.Logger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A class that represents a Telegram message
@@ -40,93 +44,133 @@ import java.util.logging.Logger;
  */
 public class TelegramMessage implements Message {
 
-  private static final Logger LOGGER = Logger.getLogger(TelegramMessage.class.getName());
+  /**
+   * The name used to share the fan out between Telegram messages
+   */
+  public static final String PROVIDER = "telegram";
 
-  private final String botToken;
-  private final String chatIds;
+  // https://core.telegram.org/bots/faq#my-bot-is-hitting-limits-how-do-i-avoid-this
+  private static final double BOT_RATE = 30;
+  private static final double CHAT_RATE = 1;
 
-  private String extraMessage;
-  private String content;
-  private String title;
-  private String url;
-  private String urlTitle;
+  // the token is not stored in the outbox, it's taken from the global configuration when the message is read back
+  private final transient String botToken;
+  private final List<String> chatIds;
+
+  private final MessageTemplate template;
+  private final Payload payload;
 
   /**
    * Creates a new Telegram message based on the given parameters
    *
    * @param botToken the bot token
-   * @param chatIds  the target ids separated by commas (a group conversation id or a contact id)
+   * @param chatIds  the target ids (a group conversation id or a contact id)
+   * @param template the template used to render the text of the message
+   * @param payload  the content of the message
    */
-  public TelegramMessage(String botToken, String chatIds, String extraMessage) {
+  public TelegramMessage(String botToken, List<String> chatIds, MessageTemplate template, Payload payload) {
     this.botToken = botToken;
-    this.chatIds = chatIds;
-    this.extraMessage = extraMessage;
+    this.chatIds = new ArrayList<>(chatIds);
+    this.template = template;
+    this.payload = payload;
   }
 
   @Override
-  public void setContent(String content) {
-    this.content = content;
+  public Payload getPayload() {
+    return payload;
   }
 
   @Override
-  public void setTitle(String title) {
-    this.title = title;
+  public Message withPayload(Payload payload) {
+    return new TelegramMessage(botToken, chatIds, template, payload);
+  }
+
+  private Object readResolve() {
+    TelegramNotifier.TelegramDescriptor descriptor =
+        Jenkins.getInstance().getDescriptorByType(TelegramNotifier.TelegramDescriptor.class);
+    return new TelegramMessage(descriptor.getBotToken(), chatIds, template, payload);
   }
 
   @Override
-  public void setUrl(String url, String title) {
-    this.url = url;
-    this.urlTitle = title;
+  public String getProvider() {
+    return PROVIDER;
   }
 
   @Override
-  public void highPriority() {
-    // Not possible with Telegram
+  public String getRoute() {
+    return PROVIDER + ":" + botToken + ":" + chatIds + ":" + template.getSource();
   }
 
   @Override
-  public void normalPriority() {
-    // Not possible with Telegram
+  public List<String> getRecipients() {
+    return chatIds;
   }
 
   @Override
-  public void lowPriority() {
-    // Not possible with Telegram
+  public DeliveryResult send(Collection<String> recipients) {
+    return FanOut.of(PROVIDER).send(recipients, delivery());
   }
 
-  public void send() {
-    String[] ids = chatIds.split("\\s*,\\s*");
-    HttpClient client = new HttpClient();
-    for (String chatId : ids) {
-      PostMethod post = new PostMethod(String.format(
-          "https://api.telegram.org/bot%s/sendMessage",
-          botToken
-      ));
-
-      post.setRequestHeader("Content-Type","application/x-www-form-urlencoded; charset=UTF-8");
-
-      post.setRequestBody(new NameValuePair[]{
-          new NameValuePair("chat_id", chatId),
-          new NameValuePair("text", getMessage())
-      });
-      try {
-        client.executeMethod(post);
-      } catch (IOException e) {
-        LOGGER.severe("Error while sending notification: " + e.getMessage());
-        e.printStackTrace();
-      }
+  @Override
+  public CompletableFuture<DeliveryResult> sendAsync(Collection<String> recipients) {
+    return FanOut.of(PROVIDER).sendAsync(recipients, delivery());
+  }
+
+  /**
+   * @return the fields shared by the requests to every chat
+   */
+  FormBody body() {
+    return FormBody.of("text", getMessage());
+  }
+
+  /**
+   * Renders and encodes the message once and returns the delivery shared by its chats
+   */
+  private FanOut.Delivery delivery() {
+    FormBody body = DeliveryMetrics.of(PROVIDER).render(this::body);
+    return chatId -> RateLimiter.get().execute(
+        () -> post(body, chatId),
+        RateLimiter.limit(PROVIDER + ":" + botToken, BOT_RATE),
+        RateLimiter.limit(PROVIDER + ":" + botToken + ":" + chatId, CHAT_RATE)
+    );
+  }
+
+  private ProviderResponse post(FormBody body, String chatId) throws IOException {
+    PostMethod post = new PostMethod(String.format(
+        "https://api.telegram.org/bot%s/sendMessage",
+        botToken
+    ));
+    post.setRequestEntity(body.with("chat_id", chatId));
+    return classify(NotificationHttpClient.get().execute(PROVIDER, post));
+  }
+
+  /**
+   * Classifies the response using the fields of the body, which has the error code of failed requests
+   *
+   * @param response the response of the Telegram api
+   * @return the classified response
+   */
+  static ProviderResponse classify(ProviderResponse response) {
+    Map<String, String> fields = response.fields("ok", "error_code", "description");
+    if (!fields.containsKey("ok")) {
+      // not an answer of the api (a proxy error page, for instance)
+      return response;
     }
+    if ("true".equals(fields.get("ok"))) {
+      return response.classified(Outcome.DELIVERED, null);
+    }
+    int code = response.getStatus();
+    try {
+      code = Integer.parseInt(fields.get("error_code"));
+    } catch (NumberFormatException e) {
+      // use the status code
+    }
+    Outcome outcome = code == 429 ? Outcome.RATE_LIMITED : code >= 500 ? Outcome.FAILED : Outcome.REJECTED;
+    return response.classified(outcome, fields.get("description"));
   }
 
   private String getMessage() {
-    return String.format(
-        "%s%n%n%s%n%n%s <%s>%n%n%s",
-        title,
-        content,
-        urlTitle,
-        url,
-        extraMessage
-    );
+    return template.render(payload.values());
   }
 
 }
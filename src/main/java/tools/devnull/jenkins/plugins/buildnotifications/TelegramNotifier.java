@@ -28,9 +28,9 @@ package tools.devnull.jenkins.plugins.buildnotifications;
 
 import hudson.Extension;
 import hudson.Launcher;
-import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
-import hudson.model.BuildListener;
+import hudson.model.Run;
+import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Publisher;
 import net.sf.json.JSONObject;
@@ -59,9 +59,10 @@ public class TelegramNotifier extends BaseNotifier {
   }
 
   @Override
-  protected Message createMessage(String target, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+  protected Message createMessage(Targets targets, Run<?, ?> build, Launcher launcher, TaskListener listener) {
     TelegramDescriptor descriptor = (TelegramDescriptor) getDescriptor();
-    return new TelegramMessage(descriptor.getBotToken(), target, replaceEnvString(build, getExtraMessage()));
+    return new TelegramMessage(descriptor.getBotToken(), targets.getIds(),
+        MessageTemplate.firstOf(getMessageTemplate(), descriptor.getTemplate()), createPayload(build));
   }
 
   /**
@@ -71,19 +72,39 @@ public class TelegramNotifier extends BaseNotifier {
   public static class TelegramDescriptor extends BuildStepDescriptor<Publisher> {
 
     private String botToken;
+    private int concurrency;
+    private String template;
 
     public TelegramDescriptor() {
       load();
+      FanOut.of(TelegramMessage.PROVIDER).setConcurrency(getConcurrency());
     }
 
     public String getBotToken() {
       return botToken;
     }
 
+    /**
+     * @return the template used to render the messages
+     */
+    public String getTemplate() {
+      return template;
+    }
+
+    /**
+     * @return the number of recipients that can receive a message at the same time
+     */
+    public int getConcurrency() {
+      return concurrency > 0 ? concurrency : FanOut.DEFAULT_CONCURRENCY;
+    }
+
     @Override
     public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
       JSONObject config = json.getJSONObject("telegram");
       this.botToken = config.getString("botToken");
+      this.concurrency = config.optInt("concurrency", FanOut.DEFAULT_CONCURRENCY);
+      this.template = config.optString("template", null);
+      FanOut.of(TelegramMessage.PROVIDER).setConcurrency(getConcurrency());
       save();
       return true;
     }
@@ -29,14 +29,17 @@ package tools.devnull.jenkins.plugins.buildnotifications;
 
 import hudson.Launcher;
 import hudson.model.AbstractBuild;
-import hudson.model.BuildListener;
+import hudson.model.Run;
+import hudson.model.TaskListener;
 import org.junit.Test;
 import tools.devnull.kodo.Spec;
 
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static tools.devnull.jenkins.plugins.buildnotifications.BuildChain.broken;
 import static tools.devnull.jenkins.plugins.buildnotifications.BuildChain.fixed;
 import static tools.devnull.jenkins.plugins.buildnotifications.BuildChain.stillBroken;
@@ -314,14 +317,17 @@ public class BaseNotifierTest {
     }
 
     @Override
-    protected BuildNotifier createNotifier(AbstractBuild<?, ?> build, Message message) {
+    protected BuildNotifier createNotifier(Run<?, ?> build, Message message) {
       return new BuildNotifier(message, build, "");
     }
 
     @Override
-    protected Message createMessage(String target, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
-      this.target = target;
-      return mock(Message.class);
+    protected Message createMessage(Targets targets, Run<?, ?> build, Launcher launcher, TaskListener listener) {
+      this.target = targets.toString();
+      Message message = mock(Message.class);
+      when(message.getPayload()).thenReturn(Payload.EMPTY);
+      when(message.withPayload(any(Payload.class))).thenReturn(message);
+      return message;
     }
 
     public String target() {
@@ -48,6 +48,7 @@ public class BuildChain {
     this.build = next;
     when(build.getResult()).thenReturn(result);
     when(next.getPreviousBuild()).thenReturn(actual);
+    when(next.getPreviousCompletedBuild()).thenReturn(actual);
     when(actual.getNextBuild()).thenReturn(next);
     initializeMock();
   }
@@ -62,7 +63,9 @@ public class BuildChain {
     ChangeLogSet changeLogSet = mock(ChangeLogSet.class);
     when(changeLogSet.iterator()).thenReturn(Collections.emptyIterator());
     when(build.getChangeSet()).thenReturn(changeLogSet);
-    when(build.getProject()).thenReturn(mock(AbstractProject.class));
+    AbstractProject project = mock(AbstractProject.class);
+    when(build.getProject()).thenReturn(project);
+    when(build.getParent()).thenReturn(project);
   }
 
   public BuildChain thenFailed() {
@@ -73,6 +76,13 @@ public class BuildChain {
     return new BuildChain(this.build, mock(AbstractBuild.class), Result.SUCCESS);
   }
 
+  /**
+   * Adds a build that is still running and has no result yet (a Pipeline build notifying from one of its steps)
+   */
+  public BuildChain thenRunning() {
+    return new BuildChain(this.build, mock(AbstractBuild.class), null);
+  }
+
   public AbstractBuild get() {
     return this.build;
   }
@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import org.junit.Before;
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class BuildEnvironmentTest {
+
+  private AbstractBuild build;
+
+  @Before
+  public void initialize() throws Exception {
+    build = mock(AbstractBuild.class);
+    when(build.getEnvironment(any(TaskListener.class)))
+        .thenReturn(new EnvVars(Collections.singletonMap("JOB_NAME", "project")));
+  }
+
+  @Test
+  public void testTextWithoutVariables() throws Exception {
+    Spec.begin()
+        .expect(() -> BuildEnvironment.expand(build, "Deployed to staging"), to().be("Deployed to staging"))
+        .expect(() -> BuildEnvironment.expand(build, null), to().beNull());
+    verify(build, never()).getEnvironment(any(TaskListener.class));
+  }
+
+  @Test
+  public void testSharedEnvironment() throws Exception {
+    Spec.begin()
+        .expect(() -> BuildEnvironment.expand(build, "Built ${JOB_NAME}"), to().be("Built project"))
+        .expect(() -> BuildEnvironment.expand(build, "$JOB_NAME is broken"), to().be("project is broken"));
+    verify(build, times(1)).getEnvironment(any(TaskListener.class));
+  }
+
+  @Test
+  public void testFailureNotCached() throws Exception {
+    when(build.getEnvironment(any(TaskListener.class)))
+        .thenThrow(new IOException("agent disconnected"))
+        .thenReturn(new EnvVars(Collections.singletonMap("JOB_NAME", "project")));
+    Spec.begin()
+        .expect(() -> BuildEnvironment.expand(build, "Built ${JOB_NAME}"), to().be("Built ${JOB_NAME}"))
+        .expect(() -> BuildEnvironment.expand(build, "Built ${JOB_NAME}"), to().be("Built project"),
+            because("A failure is not kept for the next notifiers"));
+  }
+
+  @Test
+  public void testInterrupted() throws Exception {
+    when(build.getEnvironment(any(TaskListener.class))).thenThrow(new InterruptedException());
+    try {
+      Spec.begin()
+          .expect(() -> BuildEnvironment.of(build).isEmpty(), to().be(true))
+          .expect(Thread.currentThread()::isInterrupted, to().be(true),
+              because("The interruption is kept for the caller"));
+    } finally {
+      Thread.interrupted();
+    }
+  }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.AbortException;
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class BuildNotifyStepTest {
+
+  @Test
+  public void testNotifier() throws Exception {
+    BuildNotifyStep step = new BuildNotifyStep("Slack", "#builds");
+    step.setMessageTemplate("${title}");
+    BaseNotifier notifier = step.createNotifier();
+    Spec.given(notifier)
+        .expect(n -> n instanceof SlackNotifier, to().be(true), because("The service name is case insensitive"))
+        .expect(BaseNotifier::getGlobalTarget, to().be("#builds"))
+        .expect(BaseNotifier::isSendIfSuccess, to().be(true), because("The step notifies any build status"))
+        .expect(BaseNotifier::getMessageTemplate, to().be("${title}"));
+  }
+
+  @Test
+  public void testUnknownService() {
+    Spec.begin()
+        .expect(() -> accepts("telegram"), to().be(true))
+        .expect(() -> accepts("email"), to().be(false), because("There is no such notification service"));
+  }
+
+  private boolean accepts(String service) {
+    try {
+      new BuildNotifyStep(service, "target").createNotifier();
+      return true;
+    } catch (AbortException e) {
+      return false;
+    }
+  }
+
+}
@@ -27,6 +27,8 @@
 
 package tools.devnull.jenkins.plugins.buildnotifications;
 
+import hudson.model.Result;
+import org.junit.After;
 import org.junit.Test;
 import tools.devnull.kodo.Spec;
 
@@ -37,6 +39,7 @@ import static tools.devnull.jenkins.plugins.buildnotifications.BuildStatus.BROKE
 import static tools.devnull.jenkins.plugins.buildnotifications.BuildStatus.FIXED;
 import static tools.devnull.jenkins.plugins.buildnotifications.BuildStatus.STILL_BROKEN;
 import static tools.devnull.jenkins.plugins.buildnotifications.BuildStatus.SUCCESSFUL;
+import static tools.devnull.kodo.Expectation.because;
 import static tools.devnull.kodo.Expectation.to;
 
 public class BuildStatusTest {
@@ -50,7 +53,52 @@ public class BuildStatusTest {
 
         .expect(statusOf(succeeded()), to().be(SUCCESSFUL))
         .expect(statusOf(succeeded().thenSucceeded()), to().be(SUCCESSFUL))
-        .expect(statusOf(failed().thenSucceeded()), to().be(FIXED));
+        .expect(statusOf(failed().thenSucceeded()), to().be(FIXED))
+
+        .expect(statusOf(succeeded().thenRunning()), to().be(SUCCESSFUL))
+        .expect(statusOf(failed().thenRunning()), to().be(FIXED));
+  }
+
+  @Test
+  public void testDefaultTags() {
+    Spec.begin()
+        .expect(BROKEN::tag, to().be("Broken"))
+        .expect(STILL_BROKEN::tag, to().be("Still Broken"))
+        .expect(FIXED::tag, to().be("Fixed"))
+        .expect(SUCCESSFUL::tag, to().be("Successful"));
+  }
+
+  @Test
+  public void testConfiguredTags() {
+    NotifierSettings.labels(new NotifierSettings.Labels(
+        new NotifierSettings("Broken :(", null, "", null, null, "Failed", null, null, null)));
+    Spec.begin()
+        .expect(BROKEN::tag, to().be("Broken :("))
+        .expect(STILL_BROKEN::tag, to().be("Still Broken"), because("Missing labels keep the default"))
+        .expect(FIXED::tag, to().be("Fixed"), because("Empty labels keep the default"))
+        .expect(() -> NotifierSettings.labels().of(Result.FAILURE), to().be("Failed"))
+        .expect(() -> NotifierSettings.labels().of(Result.SUCCESS), to().beNull());
+
+    NotifierSettings.labels(new NotifierSettings.Labels(
+        new NotifierSettings(null, "Still Broken :(", null, null, null, null, null, null, null)));
+    Spec.begin()
+        .expect(BROKEN::tag, to().be("Broken"), because("A new configuration replaces the previous labels"))
+        .expect(STILL_BROKEN::tag, to().be("Still Broken :("));
+  }
+
+  @Test
+  public void testCachedLabels() {
+    NotifierSettings.Labels labels = new NotifierSettings.Labels();
+    NotifierSettings.labels(labels);
+    Spec.begin()
+        .expect(BROKEN::tag, to().be("Broken"))
+        .expect(() -> NotifierSettings.labels(), to().be(labels),
+            because("Tags are read from the labels kept in memory, not from the configuration file"));
+  }
+
+  @After
+  public void resetLabels() {
+    NotifierSettings.labels(new NotifierSettings.Labels());
   }
 
   private Supplier<BuildStatus> statusOf(BuildChain buildChain) {
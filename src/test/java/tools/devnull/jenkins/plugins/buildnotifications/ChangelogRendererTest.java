@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class ChangelogRendererTest {
+
+  @Test
+  public void testNoChanges() {
+    Spec.begin()
+        .expect(() -> new ChangelogRenderer(10, 1000).render(Collections.emptyIterator()), to().be(""));
+  }
+
+  @Test
+  public void testAllChangesFit() {
+    Spec.begin()
+        .expect(() -> new ChangelogRenderer(10, 1000).render(changes("fix", "john", "feature", "jane")),
+            to().be("fix - john\nfeature - jane"));
+  }
+
+  @Test
+  public void testEntryCap() {
+    Spec.begin()
+        .expect(() -> new ChangelogRenderer(1, 1000).render(changes("fix", "john", "feature", "jane", "docs", "john")),
+            to().be("fix - john\n+2 more commits\n  john: 2\n  jane: 1"),
+            because("Only the first change fits"));
+  }
+
+  @Test
+  public void testCharacterBudget() {
+    Spec.begin()
+        .expect(() -> new ChangelogRenderer(10, 15).render(changes("fix", "john", "a long feature", "jane")),
+            to().be("fix - john\n+1 more commits\n  +2 more authors"),
+            because("The second change and the authors exceed the budget"));
+  }
+
+  @Test
+  public void testAuthorBudget() {
+    Spec.begin()
+        .expect(() -> new ChangelogRenderer(1, 53).render(changes("fix", "john", "feature", "jane", "docs", "joe")),
+            to().be("fix - john\n+2 more commits\n  john: 1\n  +2 more authors"),
+            because("Only the first author fits along with the omitted authors line"));
+  }
+
+  @Test
+  public void testFirstChangeExceedsBudget() {
+    Spec.begin()
+        .expect(() -> new ChangelogRenderer(10, 5).render(changes("a long fix", "john")),
+            to().be("+1 more commits\n  +1 more authors"),
+            because("The summary should not start with an empty line"));
+  }
+
+  private Iterator<ChangeLogSet.Entry> changes(String... values) {
+    List<ChangeLogSet.Entry> changes = new ArrayList<>();
+    for (int i = 0; i < values.length; i += 2) {
+      ChangeLogSet.Entry change = mock(ChangeLogSet.Entry.class);
+      User author = mock(User.class);
+      when(author.toString()).thenReturn(values[i + 1]);
+      when(change.getMsg()).thenReturn(values[i]);
+      when(change.getAuthor()).thenReturn(author);
+      changes.add(change);
+    }
+    return changes.iterator();
+  }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Before;
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static tools.devnull.jenkins.plugins.buildnotifications.CircuitBreaker.State.CLOSED;
+import static tools.devnull.jenkins.plugins.buildnotifications.CircuitBreaker.State.HALF_OPEN;
+import static tools.devnull.jenkins.plugins.buildnotifications.CircuitBreaker.State.OPEN;
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class CircuitBreakerTest {
+
+  private AtomicLong clock;
+  private CircuitBreaker circuit;
+
+  @Before
+  public void initialize() {
+    clock = new AtomicLong();
+    circuit = new CircuitBreaker("api.example.com", clock::get);
+  }
+
+  @Test
+  public void testFailureRate() throws Exception {
+    for (int i = 0; i < CircuitBreaker.MIN_REQUESTS - 1; i++) {
+      circuit.acquire();
+      circuit.failed();
+    }
+    Spec.begin()
+        .expect(circuit::getState, to().be(CLOSED), because("There are not enough requests in the window"));
+
+    for (int i = 0; i < CircuitBreaker.WINDOW_SIZE; i++) {
+      circuit.acquire();
+      circuit.succeeded();
+    }
+    circuit.acquire();
+    circuit.failed();
+    Spec.begin()
+        .expect(circuit::getState, to().be(CLOSED), because("Old failures leave the window"));
+
+    for (int i = 1; i < CircuitBreaker.WINDOW_SIZE / 2; i++) {
+      circuit.acquire();
+      circuit.failed();
+    }
+    Spec.begin()
+        .expect(circuit::getState, to().be(OPEN));
+  }
+
+  @Test
+  public void testHalfOpen() throws Exception {
+    open();
+    Spec.begin()
+        .expect(this::acquire, to().be(false), because("Requests fail fast while open"));
+
+    clock.addAndGet(CircuitBreaker.OPEN_DURATION);
+    Spec.begin()
+        .expect(this::acquire, to().be(true), because("A trial request is allowed"))
+        .expect(circuit::getState, to().be(HALF_OPEN))
+        .expect(this::acquire, to().be(false), because("Only one trial request is allowed"));
+
+    circuit.failed();
+    Spec.begin()
+        .expect(circuit::getState, to().be(OPEN));
+
+    clock.addAndGet(CircuitBreaker.OPEN_DURATION);
+    circuit.acquire();
+    circuit.succeeded();
+    Spec.begin()
+        .expect(circuit::getState, to().be(CLOSED));
+  }
+
+  @Test
+  public void testReleasedTrial() throws Exception {
+    open();
+    clock.addAndGet(CircuitBreaker.OPEN_DURATION);
+    circuit.acquire();
+    circuit.released();
+    Spec.begin()
+        .expect(circuit::getState, to().be(HALF_OPEN), because("An aborted request says nothing about the endpoint"))
+        .expect(this::acquire, to().be(true), because("Another trial request is allowed"));
+  }
+
+  @Test
+  public void testReleasedNotCounted() throws Exception {
+    for (int i = 0; i < CircuitBreaker.MIN_REQUESTS; i++) {
+      circuit.acquire();
+      circuit.released();
+    }
+    Spec.begin()
+        .expect(circuit::getState, to().be(CLOSED));
+  }
+
+  private void open() throws Exception {
+    for (int i = 0; i < CircuitBreaker.MIN_REQUESTS; i++) {
+      circuit.acquire();
+      circuit.failed();
+    }
+  }
+
+  private boolean acquire() {
+    try {
+      circuit.acquire();
+      return true;
+    } catch (CircuitBreaker.OpenException e) {
+      return false;
+    }
+  }
+
+}
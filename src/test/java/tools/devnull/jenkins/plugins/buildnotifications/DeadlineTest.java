@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class DeadlineTest {
+
+  @Test
+  public void testCurrent() {
+    Deadline deadline = Deadline.after(1000);
+    Spec.begin()
+        .expect(() -> Deadline.within(deadline, Deadline::current), to().be(deadline))
+        .expect(Deadline::current, to().beNull(), because("The previous deadline is restored"));
+    deadline.close();
+  }
+
+  @Test
+  public void testAbort() throws Exception {
+    Deadline deadline = Deadline.after(50);
+    CountDownLatch aborted = new CountDownLatch(1);
+    deadline.register(aborted::countDown);
+    boolean expired = aborted.await(1, TimeUnit.SECONDS);
+    Spec.begin()
+        .expect(() -> expired, to().be(true))
+        .expect(deadline::isExpired, to().be(true));
+    deadline.close();
+  }
+
+  @Test
+  public void testFinishedOperation() {
+    Deadline deadline = Deadline.after(1000);
+    AtomicBoolean aborted = new AtomicBoolean();
+    deadline.register(() -> aborted.set(true)).close();
+    deadline.expire();
+    Spec.begin()
+        .expect(aborted::get, to().be(false), because("Finished operations are not aborted"));
+    deadline.close();
+  }
+
+  @Test
+  public void testFanOut() {
+    Deadline deadline = Deadline.after(100);
+    DeliveryResult result = Deadline.within(deadline, () -> FanOut.of("test-deadline")
+        .send(Arrays.asList("1", "2"), recipient -> {
+          CountDownLatch aborted = new CountDownLatch(1);
+          try (Deadline.Registration registration = Deadline.current().register(aborted::countDown)) {
+            aborted.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          throw new java.io.InterruptedIOException("Aborted");
+        }));
+    deadline.close();
+    Spec.begin()
+        .expect(result::isSuccessful, to().be(false))
+        .expect(() -> result.getFailures().size(), to().be(2));
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome.DELIVERED;
+import static tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome.FAILED;
+import static tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome.RATE_LIMITED;
+import static tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome.REJECTED;
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class DeliveryMetricsTest {
+
+  @Test
+  public void testOutcome() {
+    Spec.begin()
+        .expect(() -> DeliveryMetrics.Outcome.of(result(200)), to().be(DELIVERED))
+        .expect(() -> DeliveryMetrics.Outcome.of(result(400)), to().be(REJECTED))
+        .expect(() -> DeliveryMetrics.Outcome.of(result(429)), to().be(RATE_LIMITED))
+        .expect(() -> DeliveryMetrics.Outcome.of(result(503)), to().be(FAILED))
+        .expect(() -> DeliveryMetrics.Outcome.of(RecipientResult.failed("123", "Connection refused", 0)),
+            to().be(FAILED));
+  }
+
+  @Test
+  public void testCounters() {
+    DeliveryMetrics metrics = DeliveryMetrics.of("test-counters");
+    metrics.started();
+    metrics.started();
+    metrics.finished(result(200));
+    Spec.begin()
+        .expect(() -> metrics.getCount(DELIVERED), to().be(1L))
+        .expect(() -> metrics.getCount(FAILED), to().be(0L))
+        .expect(metrics::getInFlight, to().be(1));
+  }
+
+  @Test
+  public void testTimer() {
+    DeliveryMetrics.Timer timer = new DeliveryMetrics.Timer();
+    for (int i = 1; i <= 100; i++) {
+      timer.update(TimeUnit.MILLISECONDS.toNanos(i));
+    }
+    Spec.begin()
+        .expect(timer::getCount, to().be(100L))
+        .expect(timer::getMean, to().be(50.5))
+        .expect(timer::getMax, to().be(100.0))
+        .expect(() -> timer.getPercentile(0.5), to().be(50.0), because("Percentiles are bucket bounds"))
+        .expect(() -> timer.getPercentile(0.95), to().be(100.0), because("Percentiles are limited by the max"));
+  }
+
+  @Test
+  public void testTimerListener() {
+    DeliveryMetrics.Timer timer = new DeliveryMetrics.Timer();
+    timer.update(TimeUnit.MILLISECONDS.toNanos(1));
+    List<Long> durations = new ArrayList<>();
+    timer.listen(durations::add);
+    timer.update(TimeUnit.MILLISECONDS.toNanos(2));
+    Spec.begin()
+        .expect(() -> durations, to().be(Collections.singletonList(TimeUnit.MILLISECONDS.toNanos(2))),
+            because("Only the durations recorded after listening are passed"))
+        .expect(timer::getCount, to().be(2L));
+  }
+
+  private static RecipientResult result(int status) {
+    return RecipientResult.of("123", new ProviderResponse(status, ""), 0);
+  }
+
+}
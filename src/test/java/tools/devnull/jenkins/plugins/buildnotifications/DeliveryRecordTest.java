@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome.DELIVERED;
+import static tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome.FAILED;
+import static tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome.REJECTED;
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class DeliveryRecordTest {
+
+  @Test
+  public void testAttempt() {
+    DeliveryRecord.Attempt attempt = new DeliveryRecord.Attempt("slack", 1000, new DeliveryResult(Arrays.asList(
+        RecipientResult.of("C0123456", SlackMessage.classify(
+            new ProviderResponse(200, "{\"ok\":false,\"error\":\"not_in_channel\"}")), 42),
+        RecipientResult.of("C42", new ProviderResponse(200, "{\"ok\":true}"), 12),
+        RecipientResult.failed("C0654321", "Connection refused", 5)
+    )));
+    Spec.begin()
+        .expect(() -> attempt.getProvider(), to().be("slack"))
+        .expect(() -> attempt.getDeliveries().get(0).getRecipient(), to().be("...3456"),
+            because("Only the end of the recipient is recorded"))
+        .expect(() -> attempt.getDeliveries().get(0).getOutcome(), to().be(REJECTED))
+        .expect(() -> attempt.getDeliveries().get(0).getError(), to().be("not_in_channel"))
+        .expect(() -> attempt.getDeliveries().get(0).getElapsedTime(), to().be(42L))
+        .expect(() -> attempt.getDeliveries().get(1).getRecipient(), to().be("C42"))
+        .expect(() -> attempt.getDeliveries().get(1).getOutcome(), to().be(DELIVERED))
+        .expect(() -> attempt.getDeliveries().get(1).getError(), to().beNull())
+        .expect(() -> attempt.getDeliveries().get(2).getOutcome(), to().be(FAILED))
+        .expect(() -> attempt.getDeliveries().get(2).getStatus(), to().be(0))
+        .expect(() -> attempt.getDeliveries().get(2).getError(), to().be("Connection refused"));
+  }
+
+  @Test
+  public void testMaskedLogs() {
+    RecipientResult result = RecipientResult.failed("uQiRzpo4DXghDmr9QzzfQu27cmVRsG", "Connection refused", 5);
+    Spec.begin()
+        .expect(result::toString, to().be("...VRsG: Connection refused (5ms)"),
+            because("Recipients may be credentials"))
+        .expect(() -> RecipientResult.mask(Arrays.asList("C0123456", "C42")), to().be(Arrays.asList("...3456", "C42")));
+  }
+
+  @Test
+  public void testLatestAttempts() {
+    DeliveryRecord record = new DeliveryRecord();
+    for (int i = 0; i < DeliveryRecord.MAX_ATTEMPTS + 5; i++) {
+      record.add(new DeliveryRecord.Attempt("telegram", i, new DeliveryResult(Collections.emptyList())));
+    }
+    Spec.begin()
+        .expect(() -> record.getAttempts().size(), to().be(DeliveryRecord.MAX_ATTEMPTS))
+        .expect(() -> record.getAttempts().get(0).getDate().getTime(), to().be(5L),
+            because("The oldest attempts are discarded"));
+  }
+
+}
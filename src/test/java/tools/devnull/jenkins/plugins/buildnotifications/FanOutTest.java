@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class FanOutTest {
+
+  @Test
+  public void testFailingRecipient() {
+    List<String> recipients = Arrays.asList("first", "failing", "last");
+    DeliveryResult result = FanOut.of("test-failing").send(recipients, recipient -> {
+      if ("failing".equals(recipient)) {
+        throw new IOException("Connection refused");
+      }
+      return new ProviderResponse(200, "");
+    });
+    Spec.begin()
+        .expect(() -> recipientsOf(result.getResults()), to().be(recipients), because("Order is preserved"))
+        .expect(() -> recipientsOf(result.getFailures()), to().be(Arrays.asList("failing")))
+        .expect(result::isSuccessful, to().be(false));
+  }
+
+  @Test
+  public void testConcurrencyLimit() {
+    FanOut fanOut = FanOut.of("test-concurrency");
+    fanOut.setConcurrency(2);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    DeliveryResult result = fanOut.send(Arrays.asList("1", "2", "3", "4", "5", "6"), recipient -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      running.decrementAndGet();
+      return new ProviderResponse(200, "");
+    });
+    Spec.begin()
+        .expect(result::isSuccessful, to().be(true))
+        .expect(maxRunning::get, to().be(2), because("Only two recipients can receive at the same time"));
+  }
+
+  @Test
+  public void testConcurrencyLimitOfSingleRecipients() throws Exception {
+    FanOut fanOut = FanOut.of("test-single");
+    fanOut.setConcurrency(1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    FanOut.Delivery delivery = recipient -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      running.decrementAndGet();
+      return new ProviderResponse(200, "");
+    };
+    List<Thread> senders = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread sender = new Thread(() -> fanOut.send(Collections.singletonList("single"), delivery));
+      senders.add(sender);
+      sender.start();
+    }
+    for (Thread sender : senders) {
+      sender.join(5000);
+    }
+    Spec.begin()
+        .expect(maxRunning::get, to().be(1), because("Single recipients also respect the limit"));
+  }
+
+  @Test
+  public void testSendAsync() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<DeliveryResult> result = FanOut.of("test-async").sendAsync(Arrays.asList("1", "2"), recipient -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return new ProviderResponse(200, "");
+    });
+    Spec.begin()
+        .expect(result::isDone, to().be(false), because("The caller doesn't wait for the delivery"));
+    release.countDown();
+    DeliveryResult delivered = result.get(5, TimeUnit.SECONDS);
+    Spec.begin()
+        .expect(delivered::isSuccessful, to().be(true))
+        .expect(() -> recipientsOf(delivered.getResults()), to().be(Arrays.asList("1", "2")));
+  }
+
+  @Test
+  public void testBoundedAsync() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    List<CompletableFuture<Boolean>> tasks = new ArrayList<>();
+    // a few more than the limit, since threads of previous tasks may still be taking tasks from the queue
+    for (int i = 0; i < 2 * FanOut.ASYNC_THREADS + FanOut.ASYNC_QUEUE_CAPACITY; i++) {
+      tasks.add(FanOut.async(() -> {
+        try {
+          return release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          return false;
+        }
+      }));
+    }
+    CompletableFuture<Boolean> last = tasks.get(tasks.size() - 1);
+    Spec.begin()
+        .expect(last::isCompletedExceptionally, to().be(true), because("The threads and the queue are full"));
+    release.countDown();
+    for (CompletableFuture<Boolean> task : tasks) {
+      if (!task.isCompletedExceptionally()) {
+        task.get(5, TimeUnit.SECONDS);
+      }
+    }
+  }
+
+  private List<String> recipientsOf(List<RecipientResult> results) {
+    return results.stream().map(RecipientResult::getRecipient).collect(Collectors.toList());
+  }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.nio.charset.StandardCharsets;
+
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class FormBodyTest {
+
+  @Test
+  public void testEncoding() {
+    FormBody body = FormBody.of("text", "Broken & fixed\nçã", "title", null);
+    Spec.begin()
+        .expect(() -> string(body.bytes("chat_id", "-100")),
+            to().be("text=Broken+%26+fixed%0A%C3%A7%C3%A3&title=&chat_id=-100"))
+        .expect(() -> string(body.bytes("chat_id", "-200")),
+            to().be("text=Broken+%26+fixed%0A%C3%A7%C3%A3&title=&chat_id=-200"),
+            because("Only the field of the recipient changes"))
+        .expect(() -> string(FormBody.of().bytes("user", "someone")), to().be("user=someone"));
+  }
+
+  private static String string(byte[] bytes) {
+    return new String(bytes, StandardCharsets.US_ASCII);
+  }
+
+}
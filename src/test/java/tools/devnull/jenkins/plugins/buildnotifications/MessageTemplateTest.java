@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Test;
+import tools.devnull.jenkins.plugins.buildnotifications.MessageTemplate.Placeholder;
+import tools.devnull.kodo.Spec;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class MessageTemplateTest {
+
+  private final Map<Placeholder, String> values = new EnumMap<>(Placeholder.class);
+
+  {
+    values.put(Placeholder.TITLE, "Broken - Build #3 of project");
+    values.put(Placeholder.CONTENT, "FAILURE");
+    values.put(Placeholder.URL, "http://jenkins/job/project/3");
+    values.put(Placeholder.URL_TITLE, "Go to build");
+    values.put(Placeholder.JOB, "project");
+    values.put(Placeholder.NUMBER, "3");
+  }
+
+  @Test
+  public void testDefaultTemplate() {
+    Spec.begin()
+        .expect(() -> MessageTemplate.of(null).render(values),
+            to().be("Broken - Build #3 of project\n\nFAILURE\n\nGo to build <http://jenkins/job/project/3>\n\n"),
+            because("Missing values are rendered as empty strings"));
+  }
+
+  @Test
+  public void testCustomTemplate() {
+    Spec.begin()
+        .expect(() -> MessageTemplate.of("${job} #${number}: ${content}").render(values),
+            to().be("project #3: FAILURE"))
+        .expect(() -> MessageTemplate.of("${JOB_NAME} ${job} ${unclosed").render(values),
+            to().be("${JOB_NAME} project ${unclosed"), because("Unknown placeholders are kept"));
+  }
+
+  @Test
+  public void testCache() {
+    Spec.begin()
+        .expect(() -> MessageTemplate.of("${title}") == MessageTemplate.of("${title}"), to().be(true))
+        .expect(() -> MessageTemplate.firstOf(null, "", "${title}") == MessageTemplate.of("${title}"), to().be(true));
+  }
+
+}
@@ -0,0 +1,288 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class NotificationDispatcherTest {
+
+  private final List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+  private final List<String> workers = Collections.synchronizedList(new ArrayList<>());
+  private final CountDownLatch done = new CountDownLatch(6);
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Test
+  public void testQueue() throws Exception {
+    NotificationDispatcher dispatcher = new NotificationDispatcher(1, 1);
+    boolean running = dispatcher.dispatch(new BlockingMessage("running"));
+    started.await(5, TimeUnit.SECONDS);
+    CompletableFuture<DeliveryResult> queued = dispatcher.dispatchAsync(new TestMessage("queued", 0), null);
+    int activeCount = dispatcher.getActiveCount();
+    int queueSize = dispatcher.getQueueSize();
+    boolean rejected = !dispatcher.dispatch(new TestMessage("rejected", 0));
+    Spec.begin()
+        .expect(() -> running, to().be(true))
+        .expect(() -> activeCount, to().be(1))
+        .expect(() -> queueSize, to().be(1), because("The only worker is busy"))
+        .expect(() -> rejected, to().be(true), because("The queue is full"))
+        .expect(() -> delivered.isEmpty(), to().be(true), because("The caller doesn't deliver the messages"));
+    release.countDown();
+    queued.get(5, TimeUnit.SECONDS);
+    Spec.begin()
+        .expect(() -> delivered, to().be(Arrays.asList("running", "queued")))
+        .expect(() -> workers.stream().allMatch(name -> name.startsWith("build-notifications-")), to().be(true),
+            because("Messages are delivered by the workers of the dispatcher"))
+        .expect(dispatcher::getQueueSize, to().be(0));
+  }
+
+  @Test
+  public void testSequences() throws Exception {
+    NotificationDispatcher dispatcher = new NotificationDispatcher(4, 10);
+    for (int i = 1; i <= 3; i++) {
+      dispatcher.dispatch(new TestMessage("slow" + i, 50), "slow");
+      dispatcher.dispatch(new TestMessage("fast" + i, 5), "fast");
+    }
+    done.await(5, TimeUnit.SECONDS);
+    Spec.begin()
+        .expect(() -> delivered, to().be(Arrays.asList("fast1", "fast2", "fast3", "slow1", "slow2", "slow3")),
+            because("Sequences are delivered in order and don't wait for each other"));
+  }
+
+  @Test
+  public void testRetryHoldsSequence() throws Exception {
+    NotificationDispatcher dispatcher = new NotificationDispatcher(2, 10);
+    dispatcher.setInitialBackoff(20);
+    dispatcher.dispatch(new FlakyMessage("broken"), "job");
+    CompletableFuture<DeliveryResult> fixed = dispatcher.dispatchAsync(new TestMessage("fixed", 0), "job");
+    fixed.get(5, TimeUnit.SECONDS);
+    Spec.begin()
+        .expect(() -> delivered, to().be(Arrays.asList("broken", "broken", "fixed")),
+            because("The next message of the sequence waits for the retry"));
+  }
+
+  @Test
+  public void testDispatchAsync() throws Exception {
+    NotificationDispatcher dispatcher = new NotificationDispatcher(1, 1);
+    CompletableFuture<DeliveryResult> first = dispatcher.dispatchAsync(new BlockingMessage("first"), null);
+    CompletableFuture<DeliveryResult> second = dispatcher.dispatchAsync(new TestMessage("second", 0), null);
+    CompletableFuture<DeliveryResult> third = dispatcher.dispatchAsync(new TestMessage("third", 0), null);
+    Spec.begin()
+        .expect(() -> first.isDone(), to().be(false), because("The dispatcher doesn't wait for the delivery"))
+        .expect(() -> third.isCompletedExceptionally(), to().be(true), because("The queue is full"));
+    release.countDown();
+    DeliveryResult result = first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+    Spec.begin()
+        .expect(() -> result.isSuccessful(), to().be(true))
+        .expect(() -> delivered, to().be(Arrays.asList("first", "second")));
+  }
+
+  @Test
+  public void testPriorities() throws Exception {
+    NotificationDispatcher dispatcher = new NotificationDispatcher(1, 10);
+    dispatcher.dispatch(new BlockingMessage("running"));
+    CompletableFuture<DeliveryResult> successful =
+        dispatcher.dispatchAsync(new TestMessage("successful", 0, Payload.Priority.LOW), null);
+    dispatcher.dispatch(new TestMessage("fixed", 0, Payload.Priority.NORMAL));
+    dispatcher.dispatch(new TestMessage("broken", 0, Payload.Priority.HIGH));
+    release.countDown();
+    successful.get(5, TimeUnit.SECONDS);
+    Spec.begin()
+        .expect(() -> delivered, to().be(Arrays.asList("running", "broken", "fixed", "successful")),
+            because("Waiting messages are delivered by priority"));
+  }
+
+  @Test
+  public void testShedding() throws Exception {
+    NotificationDispatcher dispatcher = new NotificationDispatcher(1, 1);
+    dispatcher.dispatch(new BlockingMessage("running"));
+    CompletableFuture<DeliveryResult> successful =
+        dispatcher.dispatchAsync(new TestMessage("successful", 0, Payload.Priority.LOW), null);
+    CompletableFuture<DeliveryResult> broken =
+        dispatcher.dispatchAsync(new TestMessage("broken", 0, Payload.Priority.HIGH), null);
+    boolean enqueued = dispatcher.dispatch(new TestMessage("another successful", 0, Payload.Priority.LOW));
+    release.countDown();
+    broken.get(5, TimeUnit.SECONDS);
+    Spec.begin()
+        .expect(successful::isCompletedExceptionally, to().be(true),
+            because("The successful build gives its place to the broken one"))
+        .expect(() -> enqueued, to().be(false), because("There is no lower priority message to discard"))
+        .expect(() -> dispatcher.getShedCount(Payload.Priority.LOW), to().be(2L))
+        .expect(() -> dispatcher.getShedCount(Payload.Priority.HIGH), to().be(0L))
+        .expect(() -> delivered, to().be(Arrays.asList("running", "broken")));
+  }
+
+  @Test
+  public void testParkedShedding() throws Exception {
+    NotificationDispatcher dispatcher = new NotificationDispatcher(1, 1);
+    dispatcher.dispatch(new BlockingMessage("running"), "job");
+    started.await(5, TimeUnit.SECONDS);
+    CompletableFuture<DeliveryResult> parked =
+        dispatcher.dispatchAsync(new TestMessage("parked", 0, Payload.Priority.LOW), "job");
+    int queueSize = dispatcher.getQueueSize();
+    boolean enqueued = dispatcher.dispatch(new TestMessage("another parked", 0, Payload.Priority.LOW), "job");
+    CompletableFuture<DeliveryResult> broken =
+        dispatcher.dispatchAsync(new TestMessage("broken", 0, Payload.Priority.HIGH), null);
+    release.countDown();
+    broken.get(5, TimeUnit.SECONDS);
+    Spec.begin()
+        .expect(() -> queueSize, to().be(1), because("Messages waiting for their sequence are queued"))
+        .expect(() -> enqueued, to().be(false), because("They count against the capacity"))
+        .expect(parked::isCompletedExceptionally, to().be(true), because("They can be discarded as well"))
+        .expect(() -> dispatcher.getShedCount(Payload.Priority.LOW), to().be(2L))
+        .expect(() -> delivered, to().be(Arrays.asList("running", "broken")))
+        .expect(dispatcher::getQueueSize, to().be(0));
+  }
+
+  @Test
+  public void testConfigure() throws Exception {
+    NotificationDispatcher dispatcher = new NotificationDispatcher(1, 10);
+    dispatcher.dispatch(new BlockingMessage("running"));
+    started.await(5, TimeUnit.SECONDS);
+    CompletableFuture<DeliveryResult> queued = dispatcher.dispatchAsync(new TestMessage("queued", 0), null);
+    dispatcher.configure(1, 1);
+    int queueSize = dispatcher.getQueueSize();
+    boolean rejected = !dispatcher.dispatch(new TestMessage("rejected", 0));
+    dispatcher.configure(2, 10);
+    queued.get(5, TimeUnit.SECONDS);
+    Spec.begin()
+        .expect(() -> queueSize, to().be(1), because("Queued messages are kept by the new configuration"))
+        .expect(() -> rejected, to().be(true), because("They count against the new capacity"))
+        .expect(() -> delivered, to().be(Collections.singletonList("queued")),
+            because("The new worker takes the queued message"))
+        .expect(dispatcher::getPoolSize, to().be(2));
+    release.countDown();
+  }
+
+  private class TestMessage implements Message {
+
+    private final String id;
+    private final long delay;
+    private final Payload payload;
+
+    private TestMessage(String id, long delay) {
+      this(id, delay, Payload.Priority.NORMAL);
+    }
+
+    private TestMessage(String id, long delay, Payload.Priority priority) {
+      this.id = id;
+      this.delay = delay;
+      this.payload = Payload.builder().priority(priority).build();
+    }
+
+    @Override
+    public Payload getPayload() {
+      return payload;
+    }
+
+    @Override
+    public Message withPayload(Payload payload) {
+      return this;
+    }
+
+    @Override
+    public List<String> getRecipients() {
+      return Collections.singletonList(id);
+    }
+
+    @Override
+    public DeliveryResult send(Collection<String> recipients) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      workers.add(Thread.currentThread().getName());
+      delivered.add(id);
+      done.countDown();
+      return new DeliveryResult(Collections.singletonList(RecipientResult.of(id, new ProviderResponse(200, ""), 0)));
+    }
+
+  }
+
+  /**
+   * A message that fails in the first attempt
+   */
+  private class FlakyMessage extends TestMessage {
+
+    private boolean failed;
+
+    private FlakyMessage(String id) {
+      super(id, 0);
+    }
+
+    @Override
+    public DeliveryResult send(Collection<String> recipients) {
+      DeliveryResult result = super.send(recipients);
+      if (!failed) {
+        failed = true;
+        return new DeliveryResult(Collections.singletonList(
+            RecipientResult.of(recipients.iterator().next(), new ProviderResponse(503, ""), 0)));
+      }
+      return result;
+    }
+
+  }
+
+  /**
+   * A message that keeps the worker busy until the test releases it
+   */
+  private class BlockingMessage extends TestMessage {
+
+    private BlockingMessage(String id) {
+      super(id, 0);
+    }
+
+    @Override
+    public DeliveryResult send(Collection<String> recipients) {
+      started.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return super.send(recipients);
+    }
+
+  }
+
+}
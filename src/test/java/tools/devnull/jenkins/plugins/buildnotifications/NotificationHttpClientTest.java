@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.junit.After;
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class NotificationHttpClientTest {
+
+  private final NotificationHttpClient client = NotificationHttpClient.get();
+
+  @Test
+  public void testBody() throws Exception {
+    String body = NotificationHttpClient.readBody(new Response("{\"ok\":true}".getBytes(StandardCharsets.UTF_8)));
+    Spec.begin()
+        .expect(() -> body, to().be("{\"ok\":true}"));
+  }
+
+  @Test
+  public void testBodySizeCap() throws Exception {
+    byte[] content = new byte[NotificationHttpClient.MAX_BODY_SIZE * 2 + 100];
+    Arrays.fill(content, (byte) 'a');
+    Response response = new Response(content);
+    String body = NotificationHttpClient.readBody(response);
+    Spec.begin()
+        .expect(body::length, to().be(NotificationHttpClient.MAX_BODY_SIZE), because("Only the beginning is kept"))
+        .expect(response.input::available, to().be(0), because("The whole body is read to reuse the connection"));
+  }
+
+  @Test
+  public void testPoolStatistics() {
+    client.configure(7, 3);
+    Spec.begin()
+        .expect(client::getMaxConnections, to().be(7))
+        .expect(client::getMaxConnectionsPerHost, to().be(3))
+        .expect(client::getConnectionsInPool, to().be(0), because("No request was made"));
+  }
+
+  @After
+  public void resetPool() {
+    client.configure(NotificationHttpClient.DEFAULT_MAX_CONNECTIONS,
+        NotificationHttpClient.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+  }
+
+  /**
+   * A method that already has a response
+   */
+  private static class Response extends PostMethod {
+
+    private final ByteArrayInputStream input;
+
+    private Response(byte[] content) {
+      super("https://api.example.com");
+      this.input = new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public InputStream getResponseBodyAsStream() {
+      return input;
+    }
+
+    @Override
+    public String getResponseCharSet() {
+      return "UTF-8";
+    }
+
+  }
+
+}
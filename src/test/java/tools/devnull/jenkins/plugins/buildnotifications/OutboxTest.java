@@ -0,0 +1,214 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import tools.devnull.kodo.Spec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class OutboxTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+  private Outbox outbox;
+
+  @Before
+  public void initialize() throws IOException {
+    directory = folder.newFolder();
+    // the files are written by the calling thread, so they can be checked right away
+    outbox = new Outbox(() -> directory, Runnable::run);
+  }
+
+  @Test
+  public void testWrite() {
+    outbox.add(new StoredMessage("first", "second"));
+    List<Outbox.Entry> stored = new Outbox(() -> directory, Runnable::run).load();
+    Spec.begin()
+        .expect(outbox::size, to().be(1))
+        .expect(this::files, to().be(1))
+        .expect(stored::size, to().be(1))
+        .expect(() -> stored.get(0).getRecipients(), to().be(Arrays.asList("first", "second")))
+        .expect(() -> stored.get(0).getAttempts(), to().be(0));
+  }
+
+  @Test
+  public void testSequence() {
+    outbox.add(new StoredMessage("first"), "job");
+    outbox.add(new StoredMessage("second"), "job");
+    List<Outbox.Entry> stored = new Outbox(() -> directory, Runnable::run).load();
+    Spec.begin()
+        .expect(() -> stored.get(0).getSequence(), to().be("job"), because("Retries keep the order of the job"))
+        .expect(() -> stored.get(0).getRecipients(), to().be(Collections.singletonList("first")),
+            because("Entries are loaded in the order they were stored"))
+        .expect(() -> stored.get(1).getRecipients(), to().be(Collections.singletonList("second")));
+  }
+
+  @Test
+  public void testAttempts() {
+    Outbox.Entry entry = outbox.add(new StoredMessage("first", "second"));
+    boolean retry = outbox.attempted(entry, result(delivered("first"), failed("second")));
+    List<Outbox.Entry> stored = new Outbox(() -> directory, Runnable::run).load();
+    Spec.begin()
+        .expect(() -> retry, to().be(true))
+        .expect(() -> stored.get(0).getRecipients(), to().be(Collections.singletonList("second")),
+            because("Only the recipients that failed are tried again"))
+        .expect(() -> stored.get(0).getAttempts(), to().be(1));
+    boolean done = !outbox.attempted(entry, result(delivered("second")));
+    Spec.begin()
+        .expect(() -> done, to().be(true))
+        .expect(outbox::size, to().be(0))
+        .expect(this::files, to().be(0), because("Delivered messages are deleted"));
+  }
+
+  @Test
+  public void testRetryLimit() {
+    Outbox.Entry entry = outbox.add(new StoredMessage("failing"));
+    List<Boolean> retries = new ArrayList<>();
+    // a delivery that breaks before reaching the recipients also counts
+    retries.add(outbox.attempted(entry, null));
+    for (int i = 1; i < Outbox.MAX_ATTEMPTS; i++) {
+      retries.add(outbox.attempted(entry, result(failed("failing"))));
+    }
+    Spec.begin()
+        .expect(() -> retries.subList(0, Outbox.MAX_ATTEMPTS - 1).contains(false), to().be(false))
+        .expect(() -> retries.get(Outbox.MAX_ATTEMPTS - 1), to().be(false),
+            because("The message is discarded after the last attempt"))
+        .expect(outbox::size, to().be(0))
+        .expect(this::files, to().be(0));
+  }
+
+  @Test
+  public void testThrottledAttempt() {
+    Outbox.Entry entry = outbox.add(new StoredMessage("first", "second"));
+    outbox.attempted(entry, result(delivered("first"),
+        RecipientResult.throttled("second", new RateLimiter.ThrottledException(30_000), 0)));
+    Spec.begin()
+        .expect(entry::getRecipients, to().be(Collections.singletonList("second")))
+        .expect(entry::getAttempts, to().be(0), because("The message didn't reach the notification service"))
+        .expect(entry::getRetryAfter, to().be(30_000L), because("The rate limit is respected by the retry"));
+    outbox.attempted(entry, result(RecipientResult.of("second", new ProviderResponse(429, "", "60"), 0)));
+    Spec.begin()
+        .expect(entry::getAttempts, to().be(1), because("The notification service refused the message"))
+        .expect(entry::getRetryAfter, to().be(60_000L));
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    outbox.add(new StoredMessage("pending"));
+    // the outbox of Jenkins after a restart
+    Outbox restarted = new Outbox(() -> directory, Runnable::run);
+    int replayed = restarted.replay(new NotificationDispatcher(1, 10, restarted));
+    long timeout = System.currentTimeMillis() + 5000;
+    while (files() > 0 && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    Spec.begin()
+        .expect(() -> replayed, to().be(1))
+        .expect(this::files, to().be(0), because("The replayed message was delivered"));
+  }
+
+  @Test
+  public void testCredentials() throws IOException {
+    outbox.add(new TelegramMessage("123456:bot-token", Collections.singletonList("-100123"),
+        MessageTemplate.of(MessageTemplate.DEFAULT), Payload.EMPTY));
+    String stored = new String(Files.readAllBytes(directory.listFiles()[0].toPath()), StandardCharsets.UTF_8);
+    Spec.begin()
+        .expect(() -> stored.contains("-100123"), to().be(true))
+        .expect(() -> stored.contains("bot-token"), to().be(false), because("Credentials are not stored"));
+  }
+
+  private int files() {
+    File[] files = directory.listFiles();
+    return files != null ? files.length : 0;
+  }
+
+  private static DeliveryResult result(RecipientResult... results) {
+    return new DeliveryResult(Arrays.asList(results));
+  }
+
+  private static RecipientResult delivered(String recipient) {
+    return RecipientResult.of(recipient, new ProviderResponse(200, ""), 0);
+  }
+
+  private static RecipientResult failed(String recipient) {
+    return RecipientResult.of(recipient, new ProviderResponse(503, ""), 0);
+  }
+
+  /**
+   * A message that can be stored and is always delivered
+   */
+  private static class StoredMessage implements Message {
+
+    private final List<String> recipients;
+    private final Payload payload = Payload.EMPTY;
+
+    private StoredMessage(String... recipients) {
+      this.recipients = Arrays.asList(recipients);
+    }
+
+    @Override
+    public Payload getPayload() {
+      return payload;
+    }
+
+    @Override
+    public Message withPayload(Payload payload) {
+      return this;
+    }
+
+    @Override
+    public List<String> getRecipients() {
+      return recipients;
+    }
+
+    @Override
+    public DeliveryResult send(Collection<String> recipients) {
+      return new DeliveryResult(recipients.stream().map(OutboxTest::delivered).collect(Collectors.toList()));
+    }
+
+  }
+
+}
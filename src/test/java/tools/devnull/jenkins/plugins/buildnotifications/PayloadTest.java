@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.model.AbstractBuild;
+import org.junit.Test;
+import tools.devnull.jenkins.plugins.buildnotifications.MessageTemplate.Placeholder;
+import tools.devnull.kodo.Spec;
+
+import static tools.devnull.jenkins.plugins.buildnotifications.BuildChain.fixed;
+import static tools.devnull.jenkins.plugins.buildnotifications.BuildChain.stillBroken;
+import static tools.devnull.jenkins.plugins.buildnotifications.BuildChain.successful;
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class PayloadTest {
+
+  @Test
+  public void testNotification() {
+    Payload payload = Payload.builder()
+        .extraMessage("extra")
+        .notification(Notification.of(stillBroken()), "http://jenkins/")
+        .build();
+    Spec.given(payload)
+        .expect(Payload::getPriority, to().be(Payload.Priority.HIGH))
+        .expect(Payload::getStatus, to().be(BuildStatus.STILL_BROKEN))
+        .expect(Payload::getUrlTitle, to().be("Go to build"))
+        .expect(Payload::getExtraMessage, to().be("extra"))
+        .expect(p -> p.values().get(Placeholder.STATUS), to().be(BuildStatus.STILL_BROKEN.tag()));
+
+    Spec.begin()
+        .expect(() -> priorityOf(fixed()), to().be(Payload.Priority.NORMAL))
+        .expect(() -> priorityOf(successful()), to().be(Payload.Priority.LOW));
+  }
+
+  @Test
+  public void testToBuilder() {
+    Payload original = Payload.builder().title("title").content("content").build();
+    Payload derived = original.toBuilder().content("digest").build();
+    Spec.begin()
+        .expect(original::getContent, to().be("content"), because("Payloads are immutable"))
+        .expect(derived::getContent, to().be("digest"))
+        .expect(derived::getTitle, to().be("title"))
+        .expect(() -> derived.values().get(Placeholder.STATUS), to().beNull(), because("It's not about a build"));
+  }
+
+  private Payload.Priority priorityOf(AbstractBuild build) {
+    return Payload.builder().notification(Notification.of(build), "").build().getPriority();
+  }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome.DELIVERED;
+import static tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome.FAILED;
+import static tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome.RATE_LIMITED;
+import static tools.devnull.jenkins.plugins.buildnotifications.DeliveryMetrics.Outcome.REJECTED;
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class ProviderResponseTest {
+
+  @Test
+  public void testFields() {
+    ProviderResponse response = new ProviderResponse(400,
+        "{\"ok\" : false, \"result\": [{\"id\": 1}, 2], \"error\": \"a \\\"quoted\\\" \\u00e7\", " +
+            "\"parameters\": {\"retry_after\": 7, \"empty\": null}}");
+    Map<String, String> expected = new HashMap<>();
+    expected.put("ok", "false");
+    expected.put("result.id", "1");
+    expected.put("error", "a \"quoted\" ç");
+    expected.put("parameters.retry_after", "7");
+    expected.put("parameters.empty", null);
+    Spec.begin()
+        .expect(() -> response.fields("ok", "result.id", "error", "parameters.retry_after", "parameters.empty",
+            "missing"), to().be(expected))
+        .expect(() -> new ProviderResponse(200, "{\"ok\":true,\"result\":{\"text\":\"trunc").fields("ok", "text"),
+            to().be(map("ok", "true")), because("Truncated bodies are read up to where they were cut"))
+        .expect(() -> new ProviderResponse(502, "<html>Bad Gateway</html>").fields("ok"), to().be(map()))
+        .expect(() -> new ProviderResponse(200, null).fields("ok"), to().be(map()));
+  }
+
+  @Test
+  public void testStatusOutcome() {
+    Spec.begin()
+        .expect(() -> new ProviderResponse(204, "").getOutcome(), to().be(DELIVERED))
+        .expect(() -> new ProviderResponse(404, "").getOutcome(), to().be(REJECTED))
+        .expect(() -> new ProviderResponse(429, "").getOutcome(), to().be(RATE_LIMITED))
+        .expect(() -> new ProviderResponse(500, "").getOutcome(), to().be(FAILED));
+  }
+
+  @Test
+  public void testTelegram() {
+    String blocked = "{\"ok\":false,\"error_code\":403,\"description\":\"Forbidden: bot was blocked by the user\"}";
+    Spec.begin()
+        .expect(() -> TelegramMessage.classify(new ProviderResponse(200, "{\"ok\":true,\"result\":{}}")).getOutcome(),
+            to().be(DELIVERED))
+        .expect(() -> TelegramMessage.classify(new ProviderResponse(403, blocked)).getOutcome(), to().be(REJECTED))
+        .expect(() -> TelegramMessage.classify(new ProviderResponse(403, blocked)).getError(),
+            to().be("Forbidden: bot was blocked by the user"))
+        .expect(() -> TelegramMessage.classify(new ProviderResponse(429,
+                "{\"ok\":false,\"error_code\":429,\"parameters\":{\"retry_after\":3}}")).getOutcome(),
+            to().be(RATE_LIMITED))
+        .expect(() -> TelegramMessage.classify(new ProviderResponse(200, "{\"ok\":false,\"error_code\":502}"))
+            .getOutcome(), to().be(FAILED))
+        .expect(() -> TelegramMessage.classify(new ProviderResponse(502, "Bad Gateway")).getOutcome(),
+            to().be(FAILED), because("Bodies that don't come from the api keep the status outcome"));
+  }
+
+  @Test
+  public void testSlack() {
+    String notFound = "{\"ok\":false,\"error\":\"channel_not_found\"}";
+    Spec.begin()
+        .expect(() -> SlackMessage.classify(new ProviderResponse(200, "{\"ok\":true,\"channel\":\"C1\"}"))
+            .getOutcome(), to().be(DELIVERED))
+        .expect(() -> SlackMessage.classify(new ProviderResponse(200, notFound)).isSuccessful(), to().be(false),
+            because("Slack answers errors with HTTP 200"))
+        .expect(() -> SlackMessage.classify(new ProviderResponse(200, notFound)).getOutcome(), to().be(REJECTED))
+        .expect(() -> SlackMessage.classify(new ProviderResponse(200, notFound)).getError(),
+            to().be("channel_not_found"))
+        .expect(() -> SlackMessage.classify(new ProviderResponse(200, "{\"ok\":false,\"error\":\"ratelimited\"}"))
+            .getOutcome(), to().be(RATE_LIMITED))
+        .expect(() -> SlackMessage.classify(new ProviderResponse(200,
+            "{\"ok\":false,\"error\":\"service_unavailable\"}")).getOutcome(), to().be(FAILED));
+  }
+
+  @Test
+  public void testPushover() {
+    String invalid = "{\"user\":\"invalid\",\"errors\":[\"user identifier is invalid\"],\"status\":0}";
+    Spec.begin()
+        .expect(() -> PushoverMessage.classify(new ProviderResponse(200, "{\"status\":1,\"request\":\"abc\"}"))
+            .getOutcome(), to().be(DELIVERED))
+        .expect(() -> PushoverMessage.classify(new ProviderResponse(400, invalid)).getOutcome(), to().be(REJECTED))
+        .expect(() -> PushoverMessage.classify(new ProviderResponse(400, invalid)).getError(),
+            to().be("user identifier is invalid"))
+        .expect(() -> PushoverMessage.classify(new ProviderResponse(200, "{\"status\":0}")).getOutcome(),
+            to().be(REJECTED))
+        .expect(() -> PushoverMessage.classify(new ProviderResponse(429, "{\"status\":0}")).getOutcome(),
+            to().be(RATE_LIMITED));
+  }
+
+  private static Map<String, String> map(String... entries) {
+    Map<String, String> map = new HashMap<>();
+    for (int i = 0; i < entries.length; i += 2) {
+      map.put(entries[i], entries[i + 1]);
+    }
+    return map;
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class RateLimiterTest {
+
+  @Test
+  public void testBurst() {
+    RateLimiter.TokenBucket bucket = new RateLimiter.TokenBucket(2);
+    Spec.begin()
+        .expect(bucket::reserve, to().be(0L))
+        .expect(bucket::reserve, to().be(0L))
+        .expect(() -> bucket.reserve() > 0, to().be(true), because("The burst is over"));
+  }
+
+  @Test
+  public void testBlockedBucket() {
+    RateLimiter.TokenBucket bucket = new RateLimiter.TokenBucket(30);
+    bucket.block(1_000_000_000L);
+    Spec.begin()
+        .expect(() -> bucket.reserve() > 500_000_000L, to().be(true), because("The bucket is blocked"));
+  }
+
+  @Test
+  public void testRetryAfter() {
+    Spec.begin()
+        .expect(() -> new ProviderResponse(429, "", "12").getRetryAfter(), to().be(12L))
+        .expect(() -> new ProviderResponse(429, "{\"ok\":false,\"parameters\":{\"retry_after\": 7}}").getRetryAfter(),
+            to().be(7L))
+        .expect(() -> new ProviderResponse(200, "{\"ok\":true}").getRetryAfter(), to().be(-1L));
+  }
+
+  @Test
+  public void testRefund() {
+    RateLimiter.TokenBucket bucket = new RateLimiter.TokenBucket(1);
+    bucket.reserve();
+    bucket.refund();
+    Spec.begin()
+        .expect(bucket::reserve, to().be(0L), because("The token was not used"));
+  }
+
+  @Test
+  public void testTooManyRequests() throws Exception {
+    RateLimiter limiter = new RateLimiter();
+    AtomicInteger attempts = new AtomicInteger();
+    RateLimiter.Request request = () -> {
+      attempts.incrementAndGet();
+      return new ProviderResponse(429, "", "60");
+    };
+    ProviderResponse response = limiter.execute(request, RateLimiter.limit("test:retry", 10));
+    Spec.begin()
+        .expect(response::getOutcome, to().be(DeliveryMetrics.Outcome.RATE_LIMITED),
+            because("The caller retries the delivery later"))
+        .expect(attempts::get, to().be(1))
+        .expect(() -> {
+          try {
+            limiter.execute(request, RateLimiter.limit("test:retry", 10));
+            return false;
+          } catch (RateLimiter.ThrottledException e) {
+            return e.getRetryAfter() > 55_000;
+          } catch (IOException e) {
+            return false;
+          }
+        }, to().be(true), because("Requests don't wait for a blocked bucket"))
+        .expect(attempts::get, to().be(1));
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    RateLimiter limiter = new RateLimiter();
+    limiter.execute(() -> new ProviderResponse(200, ""), RateLimiter.limit("test:idle", 1000));
+    limiter.execute(() -> new ProviderResponse(429, "", "60"), RateLimiter.limit("test:blocked", 1000));
+    Thread.sleep(10);
+    limiter.evict();
+    Spec.begin()
+        .expect(limiter::size, to().be(1), because("Only the blocked bucket is still needed"));
+  }
+
+}
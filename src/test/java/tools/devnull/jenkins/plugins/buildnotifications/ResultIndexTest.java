@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Result;
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class ResultIndexTest {
+
+  @Test
+  public void testPreviousResult() {
+    ResultIndex.get().completed("indexed-job", 4, Result.SUCCESS);
+    Spec.begin()
+        .expect(() -> ResultIndex.get().previousResult(build("indexed-job", 5, Result.FAILURE)),
+            to().be(Result.SUCCESS))
+        .expect(() -> ResultIndex.get().previousResult(build("indexed-job", 7, Result.FAILURE)),
+            to().be(Result.SUCCESS), because("Builds 5 and 6 are still running"))
+        .expect(() -> ResultIndex.get().previousResult(build("indexed-job", 3, Result.FAILURE)), to().beNull(),
+            because("Build 4 completed after build 3 started"))
+        .expect(() -> ResultIndex.get().previousResult(build("other-job", 5, Result.FAILURE)), to().beNull());
+  }
+
+  @Test
+  public void testBuildStatusUsesIndex() {
+    ResultIndex.get().completed("status-job", 9, Result.SUCCESS);
+    AbstractBuild build = build("status-job", 10, Result.FAILURE);
+    Spec.begin()
+        .expect(() -> BuildStatus.of(build), to().be(BuildStatus.BROKEN));
+    verify(build, never()).getPreviousCompletedBuild();
+  }
+
+  @Test
+  public void testRename() {
+    ResultIndex.get().completed("old-job", 1, Result.FAILURE);
+    ResultIndex.get().rename("old-job", "new-job");
+    Spec.begin()
+        .expect(() -> ResultIndex.get().previousResult(build("new-job", 2, Result.FAILURE)), to().be(Result.FAILURE))
+        .expect(() -> ResultIndex.get().previousResult(build("old-job", 2, Result.FAILURE)), to().beNull());
+  }
+
+  @Test
+  public void testDeletedBuild() {
+    ResultIndex.get().completed("pruned-job", 4, Result.SUCCESS);
+    ResultIndex.get().deleted("pruned-job", 3);
+    Spec.begin()
+        .expect(() -> ResultIndex.get().previousResult(build("pruned-job", 5, Result.FAILURE)),
+            to().be(Result.SUCCESS), because("Build 4 is still the last completed build"));
+    ResultIndex.get().deleted("pruned-job", 4);
+    Spec.begin()
+        .expect(() -> ResultIndex.get().previousResult(build("pruned-job", 5, Result.FAILURE)), to().beNull(),
+            because("The build completed before build 4 is not known"));
+  }
+
+  private static AbstractBuild build(String job, int number, Result result) {
+    AbstractBuild build = mock(AbstractBuild.class);
+    AbstractProject project = mock(AbstractProject.class);
+    when(project.getFullName()).thenReturn(job);
+    when(build.getProject()).thenReturn(project);
+    when(build.getParent()).thenReturn(project);
+    when(build.getNumber()).thenReturn(number);
+    when(build.getResult()).thenReturn(result);
+    return build;
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Before;
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class StormCoalescerTest {
+
+  private final List<Message> dispatched = Collections.synchronizedList(new ArrayList<>());
+  private final List<String> sequences = Collections.synchronizedList(new ArrayList<>());
+
+  private Outbox outbox;
+  private StormCoalescer coalescer;
+
+  @Before
+  public void initialize() {
+    // nothing is written to disk, but the entries are still tracked
+    outbox = new Outbox(() -> null, Runnable::run);
+    coalescer = new StormCoalescer(new NotificationDispatcher(1, 10, outbox) {
+      @Override
+      public void resume(Outbox.Entry entry) {
+        // delivered right away
+        dispatched.add(entry.getMessage());
+        sequences.add(entry.getSequence());
+        outbox.remove(entry);
+      }
+    }, outbox);
+    coalescer.setWindow(60);
+  }
+
+  @Test
+  public void testMerging() {
+    coalescer.offer(message("bot-token", "extra"), "core", "core", 10, "http://jenkins/");
+    coalescer.offer(message("bot-token", "extra"), "api", "api", 20, "http://jenkins/");
+    Spec.begin()
+        .expect(dispatched::size, to().be(0), because("Messages are buffered until the window ends"))
+        .expect(outbox::size, to().be(2), because("Buffered messages survive a restart"));
+    coalescer.flush();
+    Spec.begin()
+        .expect(dispatched::size, to().be(1))
+        .expect(() -> dispatched.get(0).getPayload().getTitle(),
+            to().be(BuildStatus.STILL_BROKEN.tag() + " - 2 builds"))
+        .expect(() -> dispatched.get(0).getPayload().getContent(), to().be("core #10\napi #20"))
+        .expect(outbox::size, to().be(0), because("The digest replaces the buffered messages"));
+  }
+
+  @Test
+  public void testTemplate() {
+    Payload payload = Payload.builder().about(BuildStatus.STILL_BROKEN, "core", 10, "changes").build();
+    coalescer.offer(message("bot-token", "extra").withPayload(payload), "core", "core", 10, "http://jenkins/");
+    coalescer.offer(message("bot-token", "extra").withPayload(payload), "api", "api", 20, "http://jenkins/");
+    coalescer.flush();
+    Spec.begin()
+        .expect(() -> MessageTemplate.of("${job} #${number} ${changes}: ${content}")
+                .render(dispatched.get(0).getPayload().values()),
+            to().be(" # : core #10\napi #20"), because("The digest is not about the first build"));
+  }
+
+  @Test
+  public void testKeySeparation() {
+    coalescer.offer(message("bot-token", "extra"), "core", "core", 10, "http://jenkins/");
+    coalescer.offer(message("other-bot-token", "extra"), "api", "api", 20, "http://jenkins/");
+    coalescer.offer(message("bot-token", "other extra"), "web", "web", 30, "http://jenkins/");
+    coalescer.flush();
+    Spec.begin()
+        .expect(dispatched::size, to().be(3), because("Different notifiers don't share a digest"))
+        .expect(() -> dispatched.stream().map(m -> m.getPayload().getTitle()).collect(Collectors.toSet()),
+            to().be(Collections.singleton("title")), because("A single message is sent as it is"));
+  }
+
+  @Test
+  public void testSequence() {
+    coalescer.offer(message("bot-token", "extra"), "core", "core", 10, "http://jenkins/");
+    coalescer.offer(message("bot-token", "extra"), "api", "api", 20, "http://jenkins/");
+    coalescer.offer(message("other-bot-token", "extra"), "web", "web", 30, "http://jenkins/");
+    coalescer.flush("api");
+    Spec.begin()
+        .expect(() -> sequences, to().be(Collections.singletonList("api")),
+            because("The digest goes before the next message of the job"))
+        .expect(outbox::size, to().be(1), because("Other digests keep buffering"));
+  }
+
+  @Test
+  public void testRejectedDigest() {
+    // a dispatcher without room for the digest
+    NotificationDispatcher dispatcher = new NotificationDispatcher(1, 0, outbox);
+    StormCoalescer coalescer = new StormCoalescer(dispatcher, outbox);
+    coalescer.setWindow(60);
+    coalescer.offer(message("bot-token", "extra"), "core", "core", 10, "http://jenkins/");
+    coalescer.offer(message("bot-token", "extra"), "api", "api", 20, "http://jenkins/");
+    coalescer.flush();
+    Spec.begin()
+        .expect(outbox::size, to().be(1), because("The digest replaces the buffered messages until it's retried"))
+        .expect(() -> dispatcher.getShedCount(Payload.Priority.NORMAL), to().be(0L), because("It's not discarded"));
+  }
+
+  @Test
+  public void testDisabled() {
+    coalescer.setWindow(0);
+    boolean buffered = coalescer.offer(message("bot-token", "extra"), "core", "core", 10, "http://jenkins/");
+    Spec.begin()
+        .expect(() -> buffered, to().be(false))
+        .expect(outbox::size, to().be(0));
+  }
+
+  private Message message(String token, String extraMessage) {
+    return new TelegramMessage(token, Collections.singletonList("-100123"), MessageTemplate.of(MessageTemplate.DEFAULT),
+        Payload.builder().title("title").extraMessage(extraMessage).build());
+  }
+
+}
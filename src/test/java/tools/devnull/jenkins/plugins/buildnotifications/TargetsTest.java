@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016-2017 Marcelo "Ataxexe" Guimarães
+ * <ataxexe@devnull.tools>
+ *
+ * ----------------------------------------------------------------------
+ * Permission  is hereby granted, free of charge, to any person obtaining
+ * a  copy  of  this  software  and  associated  documentation files (the
+ * "Software"),  to  deal  in the Software without restriction, including
+ * without  limitation  the  rights to use, copy, modify, merge, publish,
+ * distribute,  sublicense,  and/or  sell  copies of the Software, and to
+ * permit  persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this  permission  notice  shall be
+ * included  in  all  copies  or  substantial  portions  of the Software.
+ *                        -----------------------
+ * THE  SOFTWARE  IS  PROVIDED  "AS  IS",  WITHOUT  WARRANTY OF ANY KIND,
+ * EXPRESS  OR  IMPLIED,  INCLUDING  BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN  NO  EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM,  DAMAGES  OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT  OR  OTHERWISE,  ARISING  FROM,  OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE   OR   THE   USE   OR   OTHER   DEALINGS  IN  THE  SOFTWARE.
+ */
+
+package tools.devnull.jenkins.plugins.buildnotifications;
+
+import org.junit.Test;
+import tools.devnull.kodo.Spec;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static tools.devnull.kodo.Expectation.because;
+import static tools.devnull.kodo.Expectation.to;
+
+public class TargetsTest {
+
+  @Test
+  public void testParse() {
+    Spec.begin()
+        .expect(() -> Targets.parse("123").getIds(), to().be(Collections.singletonList("123")))
+        .expect(() -> Targets.parse(" 123 ,456,  789").getIds(), to().be(Arrays.asList("123", "456", "789")))
+        .expect(() -> Targets.parse("123, 456, 123").getIds(), to().be(Arrays.asList("123", "456")),
+            because("Duplicates are removed"))
+        .expect(() -> Targets.parse("123,, ,456,").toString(), to().be("123,456"),
+            because("Blank entries are removed"));
+  }
+
+  @Test
+  public void testEmpty() {
+    Spec.begin()
+        .expect(() -> Targets.parse(null), to().be(Targets.NONE))
+        .expect(() -> Targets.parse(""), to().be(Targets.NONE))
+        .expect(() -> Targets.parse(" , "), to().be(Targets.NONE))
+        .expect(Targets.NONE::isEmpty, to().be(true));
+  }
+
+}